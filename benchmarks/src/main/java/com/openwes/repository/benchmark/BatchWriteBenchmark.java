@@ -0,0 +1,101 @@
+package com.openwes.repository.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Batched saves/updates/deletes through
+ * {@link com.openwes.repository.hibernate.HibernateRepository}
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchWriteBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int batchSize;
+
+    private List<BenchmarkItem> newItems;
+    private List<BenchmarkItem> existingItems;
+
+    @Setup(Level.Invocation)
+    public void prepare(RepositoryState state) {
+        newItems = state.newItems(batchSize);
+        existingItems = new ArrayList<>(batchSize);
+        for (long id = 1; id <= batchSize; id++) {
+            BenchmarkItem item = new BenchmarkItem(id);
+            item.setQuantity((int) (System.nanoTime() % 100));
+            existingItems.add(item);
+        }
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> saves(RepositoryState state) {
+        state.repository().saves(newItems);
+        return newItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> updates(RepositoryState state) {
+        state.repository().updates(existingItems);
+        return existingItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> savesThenDeletes(RepositoryState state) {
+        state.repository().saves(newItems);
+        state.repository().deletes(newItems);
+        return newItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> bulkInsert(RepositoryState state) {
+        state.repository().bulkInsert(newItems);
+        return newItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> bulkUpdate(RepositoryState state) {
+        state.repository().bulkUpdate(existingItems);
+        return existingItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> bulkInsertThenBulkDelete(RepositoryState state) {
+        state.repository().bulkInsert(newItems);
+        state.repository().bulkDelete(newItems);
+        return newItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> multiRowInsert(RepositoryState state) {
+        state.repository().multiRowInsert(newItems);
+        return newItems;
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> bulkUpsert(RepositoryState state) {
+        state.repository().bulkUpsert(existingItems);
+        return existingItems;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.openwes.repository.benchmark;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@Entity
+@Table(name = "benchmark_item")
+public class BenchmarkItem {
+
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "code", length = 64)
+    private String code;
+
+    @Column(name = "location", length = 64)
+    private String location;
+
+    @Column(name = "quantity")
+    private int quantity;
+
+    public BenchmarkItem() {
+    }
+
+    public BenchmarkItem(long id) {
+        this.id = id;
+        this.code = "ITEM-" + id;
+        this.location = "LOC-" + (id % 1024);
+        this.quantity = (int) (id % 100);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+}
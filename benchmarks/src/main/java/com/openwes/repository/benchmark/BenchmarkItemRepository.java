@@ -0,0 +1,38 @@
+package com.openwes.repository.benchmark;
+
+import com.openwes.repository.DataSourceManager;
+import com.openwes.repository.FindMany;
+import com.openwes.repository.QuerySpliterator;
+import com.openwes.repository.hibernate.HibernateRepository;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class BenchmarkItemRepository extends HibernateRepository {
+
+    @Override
+    public String dataSource() {
+        return DataSourceManager.DEFAULT;
+    }
+
+    public List<BenchmarkItem> findByIds(Collection<Long> ids, boolean inCurrentThread) {
+        return QuerySpliterator.of(BenchmarkItem.class)
+                .withProvider(findProvider())
+                .splitBy("ids", ids, getMaxCollectionSize())
+                .setQuery("SELECT r FROM " + BenchmarkItem.class.getName() + " r WHERE r.id IN :ids ORDER BY r.id ASC")
+                .findMany((FindMany<Long, BenchmarkItem>) this::findMany, inCurrentThread);
+    }
+
+    /**
+     * Open session and transaction of an auto-commit call without running
+     * any statement. It measures the overhead of the execute path.
+     */
+    public void emptyCommand() {
+        executeRead(session -> null);
+    }
+
+}
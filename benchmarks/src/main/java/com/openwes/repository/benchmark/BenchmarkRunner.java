@@ -0,0 +1,33 @@
+package com.openwes.repository.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. It accepts the same arguments as JMH and
+ * always attaches the gc profiler so that every result reports allocation
+ * rate (gc.alloc.rate.norm).
+ *
+ * <pre>
+ * mvn -f pom.xml install
+ * mvn -f benchmarks/pom.xml package
+ * java -jar benchmarks/target/benchmarks.jar FindByIdsBenchmark -rf json
+ * </pre>
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
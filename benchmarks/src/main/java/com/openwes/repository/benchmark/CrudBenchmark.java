@@ -0,0 +1,60 @@
+package com.openwes.repository.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single-row CRUD through {@link com.openwes.repository.hibernate.HibernateRepository}
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CrudBenchmark {
+
+    @Benchmark
+    public BenchmarkItem findById(RepositoryState state) {
+        long id = 1 + ThreadLocalRandom.current().nextInt(RepositoryState.PRELOADED_ROWS);
+        return state.repository().findById(id, BenchmarkItem.class);
+    }
+
+    @Benchmark
+    public int count(RepositoryState state) {
+        return state.repository().count(BenchmarkItem.class);
+    }
+
+    @Benchmark
+    public BenchmarkItem save(RepositoryState state) {
+        BenchmarkItem item = new BenchmarkItem(state.nextId());
+        state.repository().save(item);
+        return item;
+    }
+
+    @Benchmark
+    public BenchmarkItem update(RepositoryState state) {
+        long id = 1 + ThreadLocalRandom.current().nextInt(RepositoryState.PRELOADED_ROWS);
+        BenchmarkItem item = new BenchmarkItem(id);
+        item.setQuantity(ThreadLocalRandom.current().nextInt(100));
+        state.repository().update(item);
+        return item;
+    }
+
+    @Benchmark
+    public int saveThenDeleteById(RepositoryState state) {
+        BenchmarkItem item = new BenchmarkItem(state.nextId());
+        state.repository().save(item);
+        return state.repository().deleteById(item.getId(), BenchmarkItem.class);
+    }
+
+}
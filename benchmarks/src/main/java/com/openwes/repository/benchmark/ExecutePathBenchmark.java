@@ -0,0 +1,56 @@
+package com.openwes.repository.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-call overhead of the auto-commit execute path. Compare time and
+ * gc.alloc.rate.norm of emptyCommand with the finders to see how much of a
+ * call is spent outside of Hibernate.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutePathBenchmark {
+
+    private final static String FIND_BY_ID = "SELECT r FROM " + BenchmarkItem.class.getName()
+            + " r WHERE r.id = :id";
+
+    @Benchmark
+    public void emptyCommand(RepositoryState state) {
+        state.repository().emptyCommand();
+    }
+
+    @Benchmark
+    public BenchmarkItem findById(RepositoryState state) {
+        long id = 1 + ThreadLocalRandom.current().nextInt(RepositoryState.PRELOADED_ROWS);
+        return state.repository().findById(id, BenchmarkItem.class);
+    }
+
+    @Benchmark
+    public BenchmarkItem findSingle(RepositoryState state) {
+        long id = 1 + ThreadLocalRandom.current().nextInt(RepositoryState.PRELOADED_ROWS);
+        Map<String, Object> arguments = ImmutableMap.of("id", id);
+        return state.repository().findSingle(FIND_BY_ID, arguments, BenchmarkItem.class);
+    }
+
+    @Benchmark
+    public int count(RepositoryState state) {
+        return state.repository().count(BenchmarkItem.class);
+    }
+
+}
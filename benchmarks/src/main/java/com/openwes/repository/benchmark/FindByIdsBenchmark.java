@@ -0,0 +1,58 @@
+package com.openwes.repository.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * findByIds through {@link com.openwes.repository.QuerySpliterator} on the
+ * fork join pool vs in current thread
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class FindByIdsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int size;
+
+    @Param({"false", "true"})
+    private boolean inCurrentThread;
+
+    private List<Long> ids;
+
+    @Setup
+    public void prepare() {
+        ids = new ArrayList<>(RepositoryState.PRELOADED_ROWS);
+        for (long id = 1; id <= RepositoryState.PRELOADED_ROWS; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, new Random(size));
+        ids = new ArrayList<>(ids.subList(0, size));
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> findByIds(RepositoryState state) {
+        return state.repository().findByIds(ids, inCurrentThread);
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.openwes.repository.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * findByIds of a long array vs boxing it into a list first, as callers which
+ * hold primitive ids had to
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LongIdsBenchmark {
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private long[] ids;
+
+    @Setup
+    public void prepare() {
+        List<Long> all = new ArrayList<>(RepositoryState.PRELOADED_ROWS);
+        for (long id = 1; id <= RepositoryState.PRELOADED_ROWS; id++) {
+            all.add(id);
+        }
+        Collections.shuffle(all, new Random(size));
+        ids = all.subList(0, size).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> boxed(RepositoryState state) {
+        List<Long> boxed = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            boxed.add(id);
+        }
+        return state.repository().findByIds(boxed, BenchmarkItem.class);
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> primitive(RepositoryState state) {
+        return state.repository().findByIds(ids, BenchmarkItem.class);
+    }
+
+}
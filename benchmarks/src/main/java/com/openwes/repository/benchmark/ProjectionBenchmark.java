@@ -0,0 +1,83 @@
+package com.openwes.repository.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Page of managed entities vs a constructor projection of three columns
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ProjectionBenchmark {
+
+    public final static class ItemRow {
+
+        private final long id;
+        private final String code;
+        private final int quantity;
+
+        public ItemRow(long id, String code, int quantity) {
+            this.id = id;
+            this.code = code;
+            this.quantity = quantity;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+
+    private final static String ENTITIES = "SELECT r FROM " + BenchmarkItem.class.getName()
+            + " r WHERE r.id <= :max ORDER BY r.id";
+    private final static String ROWS = "SELECT r.id, r.code, r.quantity FROM " + BenchmarkItem.class.getName()
+            + " r WHERE r.id <= :max ORDER BY r.id";
+
+    @Param({"100", "1000"})
+    private long rows;
+
+    private Map<String, Object> params;
+
+    @Setup
+    public void prepare() {
+        params = ImmutableMap.of("max", rows);
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> entities(RepositoryState state) {
+        return state.repository().findMany(ENTITIES, params, BenchmarkItem.class);
+    }
+
+    @Benchmark
+    public List<ItemRow> projection(RepositoryState state) {
+        return state.repository().project(ROWS, params, ItemRow.class);
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.openwes.repository.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * findMany on read-only sessions vs read-write sessions which keep a
+ * snapshot of every loaded entity and flush on commit
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ReadOnlyFinderBenchmark {
+
+    public static class ReadWriteItemRepository extends BenchmarkItemRepository {
+
+        @Override
+        protected boolean isReadOnlyFinders() {
+            return false;
+        }
+    }
+
+    private final static String QUERY = "SELECT r FROM " + BenchmarkItem.class.getName()
+            + " r WHERE r.id <= :max ORDER BY r.id";
+
+    @Param({"100", "10000"})
+    private long rows;
+
+    @Param({"true", "false"})
+    private boolean readOnly;
+
+    private BenchmarkItemRepository repository;
+    private Map<String, Object> params;
+
+    @Setup
+    public void prepare(RepositoryState state) {
+        repository = readOnly ? state.repository() : new ReadWriteItemRepository();
+        params = ImmutableMap.of("max", rows);
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> findMany() {
+        return repository.findMany(QUERY, params, BenchmarkItem.class);
+    }
+
+}
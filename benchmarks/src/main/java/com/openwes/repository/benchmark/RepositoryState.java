@@ -0,0 +1,72 @@
+package com.openwes.repository.benchmark;
+
+import com.openwes.repository.RepositoryInitializer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Start repository module on an in-memory H2 database and pre-load
+ * {@link #PRELOADED_ROWS} rows which are shared by all benchmarks.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@State(Scope.Benchmark)
+public class RepositoryState {
+
+    public final static int PRELOADED_ROWS = 100_000;
+
+    private final RepositoryInitializer initializer = new RepositoryInitializer();
+    private final AtomicLong sequence = new AtomicLong(PRELOADED_ROWS);
+    private Config config;
+    private BenchmarkItemRepository repository;
+
+    @Setup
+    public void setup() throws Exception {
+        config = ConfigFactory.parseResources("benchmark.conf")
+                .resolve()
+                .getConfig("repository");
+        initializer.onStart(config);
+        repository = new BenchmarkItemRepository();
+        List<BenchmarkItem> items = new ArrayList<>(PRELOADED_ROWS);
+        for (long id = 1; id <= PRELOADED_ROWS; id++) {
+            items.add(new BenchmarkItem(id));
+        }
+        repository.saves(items);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        initializer.onShutdow(config);
+    }
+
+    public BenchmarkItemRepository repository() {
+        return repository;
+    }
+
+    /**
+     * @return an id which does not exist in the table yet
+     */
+    public long nextId() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * @return new items which do not exist in the table yet
+     */
+    public List<BenchmarkItem> newItems(int size) {
+        List<BenchmarkItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new BenchmarkItem(nextId()));
+        }
+        return items;
+    }
+
+}
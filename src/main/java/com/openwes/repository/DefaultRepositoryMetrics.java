@@ -0,0 +1,97 @@
+package com.openwes.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process {@link RepositoryMetrics}. Recording an operation updates a few
+ * striped counters and a lock-free histogram, it does not allocate.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class DefaultRepositoryMetrics implements RepositoryMetrics {
+
+    private final static class Recorder {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+    }
+
+    private final Recorder[] recorders;
+    private String dataSourceName;
+
+    public DefaultRepositoryMetrics() {
+        Operation[] operations = Operation.values();
+        recorders = new Recorder[operations.length];
+        for (int i = 0; i < operations.length; i++) {
+            recorders[i] = new Recorder();
+        }
+    }
+
+    @Override
+    public void bind(String dataSourceName) {
+        this.dataSourceName = dataSourceName;
+    }
+
+    @Override
+    public long start(Operation operation) {
+        recorders[operation.ordinal()].inFlight.increment();
+        return System.nanoTime();
+    }
+
+    @Override
+    public void stop(Operation operation, long start, long rows, boolean failed) {
+        long elapsed = System.nanoTime() - start;
+        Recorder recorder = recorders[operation.ordinal()];
+        recorder.inFlight.decrement();
+        recorder.count.increment();
+        if (failed) {
+            recorder.errors.increment();
+        }
+        if (rows > 0) {
+            recorder.rows.add(rows);
+        }
+        recorder.totalNanos.add(elapsed);
+        recorder.maxNanos.accumulate(elapsed);
+        recorder.histogram.record(elapsed);
+    }
+
+    public OperationStats getStats(Operation operation) {
+        Recorder recorder = recorders[operation.ordinal()];
+        long[] percentiles = recorder.histogram.percentiles(0.5, 0.95, 0.99);
+        return new OperationStats(dataSourceName, operation,
+                recorder.count.sum(),
+                recorder.errors.sum(),
+                recorder.inFlight.sum(),
+                recorder.rows.sum(),
+                TimeUnit.NANOSECONDS.toMicros(recorder.totalNanos.sum()),
+                TimeUnit.NANOSECONDS.toMicros(recorder.maxNanos.get()),
+                TimeUnit.NANOSECONDS.toMicros(percentiles[0]),
+                TimeUnit.NANOSECONDS.toMicros(percentiles[1]),
+                TimeUnit.NANOSECONDS.toMicros(percentiles[2]));
+    }
+
+    /**
+     * @return stats of operations which have been called at least once
+     */
+    public List<OperationStats> getStats() {
+        List<OperationStats> result = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            Recorder recorder = recorders[operation.ordinal()];
+            if (recorder.count.sum() > 0 || recorder.inFlight.sum() > 0) {
+                result.add(getStats(operation));
+            }
+        }
+        return result;
+    }
+
+}
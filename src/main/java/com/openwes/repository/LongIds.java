@@ -0,0 +1,96 @@
+package com.openwes.repository;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list view of a slice of a <code>long[]</code> of ids. Ids are
+ * only boxed when they are read as {@link Long}, sub lists are slices of the
+ * same array so a {@link QuerySpliterator} partitions it without copying.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public final class LongIds extends AbstractList<Long> implements RandomAccess {
+
+    private final long[] ids;
+    private final int from;
+    private final int to;
+
+    private LongIds(long[] ids, int from, int to) {
+        this.ids = ids;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @param ids
+     * @return view of ids, the array is not copied
+     */
+    public static LongIds of(long... ids) {
+        return new LongIds(ids, 0, ids.length);
+    }
+
+    /**
+     * @param ids
+     * @return view of ids if they are already in ascending order without
+     * duplicates, otherwise a view of a sorted copy without duplicates
+     */
+    public static LongIds sorted(long... ids) {
+        LongIds view = of(ids);
+        if (view.isSortedDistinct()) {
+            return view;
+        }
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+        int size = 0;
+        for (int i = 0; i < copy.length; i++) {
+            if (i == 0 || copy[i] != copy[size - 1]) {
+                copy[size++] = copy[i];
+            }
+        }
+        return new LongIds(copy, 0, size);
+    }
+
+    public long getLong(int index) {
+        if (index < 0 || index >= to - from) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+        }
+        return ids[from + index];
+    }
+
+    @Override
+    public Long get(int index) {
+        return getLong(index);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public LongIds subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > to - from || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", Size: " + (to - from));
+        }
+        return new LongIds(ids, from + fromIndex, from + toIndex);
+    }
+
+    /**
+     * @return true if ids are in strictly ascending order
+     */
+    public boolean isSortedDistinct() {
+        for (int i = from + 1; i < to; i++) {
+            if (ids[i - 1] >= ids[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOfRange(ids, from, to);
+    }
+}
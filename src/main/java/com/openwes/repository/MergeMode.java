@@ -0,0 +1,28 @@
+package com.openwes.repository;
+
+/**
+ * How {@link QuerySpliterator} assembles the results of its chunks.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public enum MergeMode {
+
+    /**
+     * Concatenate chunk results then sort them by comparator if it is set.
+     */
+    SORT,
+    /**
+     * Sort split values by natural order before partitioning and concatenate
+     * chunk results in chunk order. The query must return rows ordered by the
+     * split value, e.g. <code>WHERE r.id IN :ids ORDER BY r.id</code>, so the
+     * result is ordered without sorting it again.
+     */
+    CONCAT,
+    /**
+     * Every chunk result is already sorted by comparator, they are combined
+     * by a k-way merge.
+     */
+    MERGE
+
+}
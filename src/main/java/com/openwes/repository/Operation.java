@@ -0,0 +1,35 @@
+package com.openwes.repository;
+
+/**
+ * Repository operations which are recorded by {@link RepositoryMetrics}
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public enum Operation {
+    FIND_BY_ID,
+    FIND_BY_IDS,
+    FIND_SINGLE,
+    FIND_MANY,
+    FIND_STREAM,
+    COUNT,
+    SAVE,
+    SAVES,
+    UPDATE,
+    UPDATES,
+    DELETE,
+    DELETES,
+    BULK_WRITE,
+    /**
+     * a batch flushed by a write-behind buffer
+     */
+    WRITE_BEHIND,
+    EXECUTE_UPDATE,
+    EXECUTE,
+    /**
+     * a chunk of {@link QuerySpliterator}
+     */
+    CHUNK,
+    COMMIT,
+    ROLLBACK
+}
@@ -0,0 +1,98 @@
+package com.openwes.repository;
+
+/**
+ * Snapshot of an operation recorded by {@link DefaultRepositoryMetrics}.
+ * Latencies are in microseconds.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class OperationStats {
+
+    private final String dataSource;
+    private final Operation operation;
+    private final long count;
+    private final long errors;
+    private final long inFlight;
+    private final long rows;
+    private final long totalTimeUs;
+    private final long maxTimeUs;
+    private final long p50Us;
+    private final long p95Us;
+    private final long p99Us;
+
+    OperationStats(String dataSource, Operation operation, long count, long errors, long inFlight, long rows,
+            long totalTimeUs, long maxTimeUs, long p50Us, long p95Us, long p99Us) {
+        this.dataSource = dataSource;
+        this.operation = operation;
+        this.count = count;
+        this.errors = errors;
+        this.inFlight = inFlight;
+        this.rows = rows;
+        this.totalTimeUs = totalTimeUs;
+        this.maxTimeUs = maxTimeUs;
+        this.p50Us = p50Us;
+        this.p95Us = p95Us;
+        this.p99Us = p99Us;
+    }
+
+    public String getDataSource() {
+        return dataSource;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of rows returned or affected by completed operations
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public long getTotalTimeUs() {
+        return totalTimeUs;
+    }
+
+    public long getMeanTimeUs() {
+        return count == 0 ? 0 : totalTimeUs / count;
+    }
+
+    public long getMaxTimeUs() {
+        return maxTimeUs;
+    }
+
+    public long getP50Us() {
+        return p50Us;
+    }
+
+    public long getP95Us() {
+        return p95Us;
+    }
+
+    public long getP99Us() {
+        return p99Us;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStats{" + "dataSource=" + dataSource + ", operation=" + operation
+                + ", count=" + count + ", errors=" + errors + ", inFlight=" + inFlight + ", rows=" + rows
+                + ", totalTimeUs=" + totalTimeUs + ", maxTimeUs=" + maxTimeUs
+                + ", p50Us=" + p50Us + ", p95Us=" + p95Us + ", p99Us=" + p99Us + '}';
+    }
+
+}
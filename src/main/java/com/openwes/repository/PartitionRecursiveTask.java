@@ -0,0 +1,93 @@
+package com.openwes.repository;
+
+import com.openwes.core.logging.LogContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execute write partitions with at most fanOut partitions in flight. Unlike
+ * {@link UpdateRecursiveTask} a failed partition does not stop the others,
+ * rows, failure and elapsed time of every partition are kept.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class PartitionRecursiveTask extends RecursiveAction {
+
+    private final String txId;
+    private final List<UpdateTask> tasks;
+    private final AtomicInteger cursor;
+    private final int fanOut;
+    private final RepositoryMetrics metrics;
+    private final int[] rows;
+    private final Throwable[] failures;
+    private final long[] elapsedUs;
+
+    PartitionRecursiveTask(String txId, List<UpdateTask> tasks, int fanOut, RepositoryMetrics metrics) {
+        this(txId, tasks, new AtomicInteger(0), fanOut, metrics,
+                new int[tasks.size()], new Throwable[tasks.size()], new long[tasks.size()]);
+    }
+
+    private PartitionRecursiveTask(String txId, List<UpdateTask> tasks, AtomicInteger cursor, int fanOut,
+            RepositoryMetrics metrics, int[] rows, Throwable[] failures, long[] elapsedUs) {
+        this.txId = txId;
+        this.tasks = tasks;
+        this.cursor = cursor;
+        this.fanOut = Math.max(1, Math.min(fanOut, tasks.size()));
+        this.metrics = metrics;
+        this.rows = rows;
+        this.failures = failures;
+        this.elapsedUs = elapsedUs;
+    }
+
+    @Override
+    protected void compute() {
+        LogContext.set(LogContext.TXID, txId);
+        List<PartitionRecursiveTask> workers = null;
+        if (fanOut > 1) {
+            workers = new ArrayList<>(fanOut - 1);
+            for (int i = 1; i < fanOut; i++) {
+                PartitionRecursiveTask worker = new PartitionRecursiveTask(txId, tasks, cursor, 1, metrics,
+                        rows, failures, elapsedUs);
+                worker.fork();
+                workers.add(worker);
+            }
+        }
+        drain();
+        if (workers != null) {
+            workers.forEach(PartitionRecursiveTask::quietlyJoin);
+        }
+    }
+
+    /**
+     * Execute partitions which are not started yet in the calling thread
+     */
+    void drain() {
+        int i;
+        while ((i = cursor.getAndIncrement()) < tasks.size()) {
+            long begin = System.nanoTime();
+            try {
+                rows[i] = UpdateRecursiveTask.exec(tasks.get(i), metrics);
+            } catch (Throwable t) {
+                failures[i] = t;
+            } finally {
+                elapsedUs[i] = (System.nanoTime() - begin) / 1000;
+            }
+        }
+    }
+
+    int rows(int index) {
+        return rows[index];
+    }
+
+    Throwable failure(int index) {
+        return failures[index];
+    }
+
+    long elapsedUs(int index) {
+        return elapsedUs[index];
+    }
+
+}
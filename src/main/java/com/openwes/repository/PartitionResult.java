@@ -0,0 +1,68 @@
+package com.openwes.repository;
+
+import java.util.List;
+
+/**
+ * Result of a partition of a partitioned write
+ *
+ * @author xuanloc0511@gmail.com
+ * @param <T>
+ *
+ */
+public class PartitionResult<T> {
+
+    private final int index;
+    private final List<T> items;
+    private final int rows;
+    private final Throwable failure;
+    private final long elapsedUs;
+
+    PartitionResult(int index, List<T> items, int rows, Throwable failure, long elapsedUs) {
+        this.index = index;
+        this.items = items;
+        this.rows = rows;
+        this.failure = failure;
+        this.elapsedUs = elapsedUs;
+    }
+
+    /**
+     * @return position of partition in the write, from 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return objects of partition, they can be written again if partition
+     * failed
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return error of partition or null if it is committed
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccess() {
+        return failure == null;
+    }
+
+    public long getElapsedUs() {
+        return elapsedUs;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionResult{" + "index=" + index + ", size=" + items.size() + ", rows=" + rows
+                + ", failure=" + failure + ", elapsedUs=" + elapsedUs + '}';
+    }
+
+}
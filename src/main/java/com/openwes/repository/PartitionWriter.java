@@ -0,0 +1,20 @@
+package com.openwes.repository;
+
+import java.util.List;
+
+/**
+ * Writer of a partition of {@link RepositoryProvider#writePartitions}
+ *
+ * @author xuanloc0511@gmail.com
+ * @param <T>
+ *
+ */
+public interface PartitionWriter<T> {
+
+    /**
+     *
+     * @param partition
+     * @return number of written rows
+     */
+    public int write(List<T> partition);
+}
@@ -0,0 +1,75 @@
+package com.openwes.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Report of a partitioned write. Every partition is committed or rolled back
+ * on its own, failed partitions can be retried with {@link #getFailedItems()}.
+ *
+ * @author xuanloc0511@gmail.com
+ * @param <T>
+ *
+ */
+public class PartitionedWriteReport<T> {
+
+    private final List<PartitionResult<T>> partitions;
+    private final long elapsedUs;
+
+    PartitionedWriteReport(List<PartitionResult<T>> partitions, long elapsedUs) {
+        this.partitions = Collections.unmodifiableList(partitions);
+        this.elapsedUs = elapsedUs;
+    }
+
+    /**
+     * @return result of every partition in partition order
+     */
+    public List<PartitionResult<T>> getPartitions() {
+        return partitions;
+    }
+
+    public List<PartitionResult<T>> getFailedPartitions() {
+        return partitions.stream()
+                .filter(p -> !p.isSuccess())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return objects of failed partitions
+     */
+    public List<T> getFailedItems() {
+        List<T> items = new ArrayList<>();
+        partitions.stream()
+                .filter(p -> !p.isSuccess())
+                .forEach(p -> items.addAll(p.getItems()));
+        return items;
+    }
+
+    public boolean isSuccess() {
+        return partitions.stream().allMatch(PartitionResult::isSuccess);
+    }
+
+    /**
+     * @return number of rows written by committed partitions
+     */
+    public long getRows() {
+        return partitions.stream()
+                .filter(PartitionResult::isSuccess)
+                .mapToLong(PartitionResult::getRows)
+                .sum();
+    }
+
+    public long getElapsedUs() {
+        return elapsedUs;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedWriteReport{" + "partitions=" + partitions.size()
+                + ", failed=" + getFailedPartitions().size() + ", rows=" + getRows()
+                + ", elapsedUs=" + elapsedUs + '}';
+    }
+
+}
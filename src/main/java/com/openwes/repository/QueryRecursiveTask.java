@@ -2,56 +2,102 @@ package com.openwes.repository;
 
 import com.openwes.core.logging.LogContext;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.RecursiveTask;
-import java.util.stream.Collectors;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * 
+ * Execute query chunks with at most fanOut chunks in flight. Workers pull the
+ * next chunk from a shared cursor and write its result directly into the
+ * slot of the chunk. When a chunk fails, chunks which are not started yet
+ * are skipped and the first failure is kept in {@link #failure()}.
+ *
  * @author xuanloc0511@gmail.com
- * 
+ *
  */
-class QueryRecursiveTask extends RecursiveTask {
+class QueryRecursiveTask extends RecursiveAction {
 
     private final String txId;
     private final List<QueryTask> tasks;
+    private final Object[] results;
+    private final AtomicInteger cursor;
+    private final AtomicReference<Throwable> failure;
+    private final int fanOut;
+    private final RepositoryMetrics metrics;
 
-    public QueryRecursiveTask(String txId, List<QueryTask> tasks) {
+    public QueryRecursiveTask(String txId, List<QueryTask> tasks, int fanOut, RepositoryMetrics metrics) {
+        this(txId, tasks, new Object[tasks.size()], new AtomicInteger(0), new AtomicReference<>(), fanOut, metrics);
+    }
+
+    private QueryRecursiveTask(String txId, List<QueryTask> tasks, Object[] results,
+            AtomicInteger cursor, AtomicReference<Throwable> failure, int fanOut, RepositoryMetrics metrics) {
         this.txId = txId;
+        this.metrics = metrics;
         this.tasks = tasks;
+        this.results = results;
+        this.cursor = cursor;
+        this.failure = failure;
+        this.fanOut = Math.max(1, Math.min(fanOut, tasks.size()));
     }
 
     @Override
-    protected Object compute() {
+    protected void compute() {
         LogContext.set(LogContext.TXID, txId);
-        try {
-            List<Object> results = new ArrayList<>();
-            if (tasks.isEmpty()) {
-                return results;
+        List<QueryRecursiveTask> workers = null;
+        if (fanOut > 1) {
+            workers = new ArrayList<>(fanOut - 1);
+            for (int i = 1; i < fanOut; i++) {
+                QueryRecursiveTask worker = new QueryRecursiveTask(txId, tasks, results, cursor, failure, 1, metrics);
+                worker.fork();
+                workers.add(worker);
+            }
+        }
+        drain();
+        if (workers != null) {
+            for (QueryRecursiveTask worker : workers) {
+                if (failure.get() != null) {
+                    worker.cancel(false);
+                }
+                worker.quietlyJoin();
             }
-            if (tasks.size() == 1) {
-                results.addAll(tasks.stream()
-                        .map((QueryTask t) -> t.onExec())
-                        .collect(Collectors.toList()));
-            } else {
-                List<RecursiveTask> subs = tasks.stream()
-                        .map((t) -> {
-                            return new QueryRecursiveTask(txId, Collections.singletonList(t));
-                        }).collect(Collectors.toList());
-                subs.forEach((task) -> {
-                    task.fork();
-                });
-
-                subs.stream()
-                        .map((task) -> (List) task.join())
-                        .forEachOrdered((b) -> {
-                            results.addAll(b);
-                        });
+        }
+    }
+
+    private void drain() {
+        int i;
+        while (failure.get() == null && (i = cursor.getAndIncrement()) < tasks.size()) {
+            try {
+                results[i] = exec(tasks.get(i), metrics);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
             }
-            return results;
+        }
+    }
+
+    static Object exec(QueryTask task, RepositoryMetrics metrics) {
+        long start = metrics.start(Operation.CHUNK);
+        boolean failed = true;
+        Object result = null;
+        try {
+            result = task.onExec();
+            failed = false;
+            return result;
         } finally {
+            metrics.stop(Operation.CHUNK, start,
+                    result instanceof List ? ((List) result).size() : -1, failed);
         }
     }
 
+    /**
+     * @return result of every chunk in the order of chunks
+     */
+    Object[] results() {
+        return results;
+    }
+
+    Throwable failure() {
+        return failure.get();
+    }
+
 }
@@ -1,16 +1,21 @@
 package com.openwes.repository;
 
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.openwes.core.logging.LogContext;
 import com.openwes.core.utils.ClockService;
 import com.openwes.core.utils.ClockWatch;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
+import java.util.TreeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -33,13 +38,44 @@ public class QuerySpliterator<E> {
     private String query;
     private final Map<String, Object> arguments = new HashMap<>();
     private Comparator<E> comparator;
+    private MergeMode mergeMode = MergeMode.SORT;
+    private boolean padding = false;
     private final Class<E> dto;
     private final String txId = MDC.get(LogContext.TXID);
+    private QuerySpliteratorEnv env = QuerySpliteratorEnv.env();
 
     public QuerySpliterator(Class<E> dto) {
         this.dto = dto;
     }
 
+    /**
+     * Execute tasks on the fork join pool of provider instead of the shared
+     * one.
+     *
+     * @param provider
+     * @return
+     */
+    public QuerySpliterator<E> withProvider(RepositoryProvider provider) {
+        this.env = provider.spliteratorEnv();
+        this.padding = provider.isInClausePadding();
+        return this;
+    }
+
+    /**
+     * Pad every collection passed to the query to the next power of two,
+     * but never over the split size, by repeating its last value. Queries of
+     * collections of similar size then share one SQL text and one plan.
+     * {@link #withProvider(RepositoryProvider)} enables it if in-clause-padding
+     * is set for the data source.
+     *
+     * @param padding
+     * @return
+     */
+    public QuerySpliterator<E> setPadding(boolean padding) {
+        this.padding = padding;
+        return this;
+    }
+
     public QuerySpliterator<E> splitBy(String key, Collection<?> objects, int size) {
         this.collectionKey = key;
         this.collectionValue = objects;
@@ -52,6 +88,11 @@ public class QuerySpliterator<E> {
         return this;
     }
 
+    public QuerySpliterator<E> setMergeMode(MergeMode mergeMode) {
+        this.mergeMode = mergeMode;
+        return this;
+    }
+
     public QuerySpliterator<E> setQuery(String query) {
         this.query = query;
         return this;
@@ -73,18 +114,18 @@ public class QuerySpliterator<E> {
 
     public int executeUpdate(UpdateMany update, boolean inCurrentThread) {
         if (collectionValue.size() <= maxCollectionSize) {
-            arguments.put(collectionKey, collectionValue);
+            arguments.put(collectionKey, padded(collectionValue));
             return update.onUpdate(query, arguments);
         }
         LOGGER.info("using query-spliterator for update '{}'", query);
         ClockWatch cw = ClockService.newClockWatch();
         List<UpdateTask> tasks = new ArrayList<>();
-        Iterators.partition(collectionValue.iterator(), maxCollectionSize)
-                .forEachRemaining((list) -> {
+        partition(collectionValue, maxCollectionSize)
+                .forEach((list) -> {
                     tasks.add((UpdateTask) () -> {
                         Map<String, Object> args = new HashMap<>();
                         args.putAll(arguments);
-                        args.put(collectionKey, list);
+                        args.put(collectionKey, padded(list));
                         return update.onUpdate(query, args);
                     });
                 });
@@ -100,72 +141,152 @@ public class QuerySpliterator<E> {
             LOGGER.info("execute {} queries in {} ms", tasks.size(), cw.timeElapsedMS());
             return i;
         }
-        int rs = QuerySpliteratorEnv.env().invokeUpdate(txId, tasks);
+        int rs = env.invokeUpdate(txId, tasks);
         LOGGER.info("execute {} queries in {} ms", tasks.size(), cw.timeElapsedMS());
         return rs;
     }
 
     public List<E> findMany(FindMany<?, E> findMany) {
+        return findMany(findMany, false);
+    }
+
+    public List<E> findMany(FindMany<?, E> findMany, boolean inCurrentThread) {
         if (collectionValue.size() <= maxCollectionSize) {
-            arguments.put(collectionKey, collectionValue);
+            arguments.put(collectionKey, padded(collectionValue));
             return findMany.onQuery(query, arguments, dto);
         }
         LOGGER.info("using query-spliterator for query '{}'", query);
         List<QueryTask> tasks = new ArrayList<>();
         long started = ClockService.nowMS();
-        Iterators.partition(collectionValue.iterator(), maxCollectionSize)
-                .forEachRemaining(t -> {
+        partition(splitValues(), maxCollectionSize)
+                .forEach(t -> {
                     tasks.add((QueryTask) () -> {
                         Map<String, Object> args = new HashMap<>();
                         args.putAll(arguments);
-                        args.put(collectionKey, t);
+                        args.put(collectionKey, padded(t));
                         return findMany.onQuery(query, args, dto);
                     });
                 });
         if (tasks.isEmpty()) {
             return new ArrayList<>();
         }
-        List<E> results = new ArrayList<>();
-        results.addAll(QuerySpliteratorEnv.env().invoke(txId, tasks));
-        if (comparator != null) {
-            Collections.sort(results, comparator);
+        List<List<E>> chunks;
+        if (inCurrentThread) {
+            chunks = new ArrayList<>(tasks.size());
+            for (QueryTask task : tasks) {
+                chunks.add((List<E>) task.onExec());
+            }
+        } else {
+            chunks = env.invoke(txId, tasks);
         }
+        List<E> results = assemble(chunks);
         LOGGER.info("execute {} queries in {} ms", tasks.size(), ClockService.nowMS() - started);
         return results;
     }
 
-    public List<E> findMany(FindMany<?, E> findMany, boolean inCurrentThread) {
-        if (collectionValue.size() <= maxCollectionSize) {
-            arguments.put(collectionKey, collectionValue);
-            return findMany.onQuery(query, arguments, dto);
+    /**
+     * Values of concatenated chunks are sorted and distinct, a duplicate
+     * value in two chunks would return its rows twice
+     */
+    private Collection<?> splitValues() {
+        if (mergeMode != MergeMode.CONCAT) {
+            return collectionValue;
         }
-        LOGGER.info("using query-spliterator for query '{}'", query);
-        List<QueryTask> tasks = new ArrayList<>();
-        long started = ClockService.nowMS();
-        Iterators.partition(collectionValue.iterator(), maxCollectionSize)
-                .forEachRemaining(t -> {
-                    tasks.add((QueryTask) () -> {
-                        Map<String, Object> args = new HashMap<>();
-                        args.putAll(arguments);
-                        args.put(collectionKey, t);
-                        return findMany.onQuery(query, args, dto);
-                    });
-                });
-        if (tasks.isEmpty()) {
-            return new ArrayList<>();
+        if (collectionValue instanceof LongIds) {
+            LongIds ids = (LongIds) collectionValue;
+            return ids.isSortedDistinct() ? ids : LongIds.sorted(ids.toLongArray());
         }
-        List<E> results = new ArrayList<>();
-        if (inCurrentThread) {
-            tasks.forEach((t) -> {
-                results.addAll((Collection<? extends E>) t.onExec());
-            });
-        } else {
-            results.addAll(QuerySpliteratorEnv.env().invoke(txId, tasks));
+        return new ArrayList<>(new TreeSet<Object>(collectionValue));
+    }
+
+    /**
+     * Random access lists are split into sub list views, other collections
+     * are copied into chunks
+     */
+    private static <T> List<List<T>> partition(Collection<T> values, int size) {
+        if (values instanceof List && values instanceof RandomAccess) {
+            return Lists.partition((List<T>) values, size);
+        }
+        return Lists.newArrayList(Iterators.partition(values.iterator(), size));
+    }
+
+    private Collection<?> padded(Collection<?> values) {
+        int size = values.size();
+        if (!padding || size <= 1) {
+            return values;
+        }
+        int bucket = Math.min(Integer.highestOneBit(size - 1) << 1, Math.max(size, maxCollectionSize));
+        if (bucket <= size) {
+            return values;
+        }
+        if (values instanceof LongIds) {
+            long[] padded = Arrays.copyOf(((LongIds) values).toLongArray(), bucket);
+            Arrays.fill(padded, size, bucket, padded[size - 1]);
+            return LongIds.of(padded);
+        }
+        List<Object> padded = new ArrayList<>(bucket);
+        padded.addAll(values);
+        Object last = padded.get(size - 1);
+        while (padded.size() < bucket) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    private List<E> assemble(List<List<E>> chunks) {
+        int size = 0;
+        for (List<E> chunk : chunks) {
+            size += chunk.size();
+        }
+        List<E> results = new ArrayList<>(size);
+        if (mergeMode == MergeMode.MERGE && comparator != null) {
+            merge(chunks, results);
+            return results;
+        }
+        for (List<E> chunk : chunks) {
+            results.addAll(chunk);
         }
-        if (comparator != null) {
+        if (mergeMode == MergeMode.SORT && comparator != null) {
             Collections.sort(results, comparator);
         }
-        LOGGER.info("execute {} queries in {} ms", tasks.size(), ClockService.nowMS() - started);
         return results;
     }
+
+    /**
+     * k-way merge of sorted chunks
+     */
+    private void merge(List<List<E>> chunks, List<E> results) {
+        PriorityQueue<Cursor<E>> heap = new PriorityQueue<>(Math.max(1, chunks.size()),
+                (Cursor<E> a, Cursor<E> b) -> comparator.compare(a.current(), b.current()));
+        for (List<E> chunk : chunks) {
+            if (!chunk.isEmpty()) {
+                heap.add(new Cursor<>(chunk));
+            }
+        }
+        while (!heap.isEmpty()) {
+            Cursor<E> cursor = heap.poll();
+            results.add(cursor.current());
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+    }
+
+    private final static class Cursor<E> {
+
+        private final List<E> list;
+        private int index = 0;
+
+        Cursor(List<E> list) {
+            this.list = list;
+        }
+
+        E current() {
+            return list.get(index);
+        }
+
+        boolean advance() {
+            return ++index < list.size();
+        }
+    }
 }
@@ -1,16 +1,24 @@
 package com.openwes.repository;
 
 import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
 import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.LongAdder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Fork join pool which executes the tasks of {@link QuerySpliterator}. Every
+ * {@link RepositoryProvider} owns its env so a slow data source can not
+ * starve the others. The shared env {@link #env()} is only used by
+ * QuerySpliterator which is not bound to a data source.
  *
  * @author xuanloc0511@gmail.com
  *
@@ -18,47 +26,228 @@ import org.slf4j.LoggerFactory;
 class QuerySpliteratorEnv {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(QuerySpliteratorEnv.class);
-    private final static QuerySpliteratorEnv ENV = new QuerySpliteratorEnv();
+    private final static QuerySpliteratorEnv ENV = new QuerySpliteratorEnv("shared");
+    public final static int DEFAULT_QUEUE_SIZE = 1024;
 
-    private QuerySpliteratorEnv() {
+    enum SaturationPolicy {
+        /**
+         * execute the tasks sequentially in the calling thread
+         */
+        CALLER_RUNS,
+        /**
+         * throw {@link RejectedExecutionException}
+         */
+        ABORT,
+        /**
+         * wait until an invocation completes
+         */
+        BLOCK
+    }
+
+    QuerySpliteratorEnv(String name) {
+        this.name = name;
     }
 
     public final static QuerySpliteratorEnv env() {
         return ENV;
     }
 
+    private final String name;
     private ForkJoinPool forkJoinPool;
+    private Semaphore permits;
+    private int queueSize;
+    private int maxInFlight;
+    private SaturationPolicy saturationPolicy = SaturationPolicy.CALLER_RUNS;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private RepositoryMetrics metrics = RepositoryMetrics.NOOP;
 
+    /**
+     * Setup shared env. For backward compatibility its parallelism is never
+     * less than number of processors.
+     */
     final void setup(Config config) {
         int parallelism = config.getInt("worker-size");
         if (parallelism <= 0) {
             throw new RuntimeException("worker-size must larger than zero");
         }
-        parallelism = Math.max(Runtime.getRuntime().availableProcessors(), parallelism);
+        setup(Math.max(Runtime.getRuntime().availableProcessors(), parallelism), config);
+    }
+
+    /**
+     * Setup env with exact parallelism. Max in-flight is the max number of
+     * chunks of an invocation which are executed at the same time. Queue size
+     * is the max number of concurrent invocations on this env, when it is
+     * reached the saturation policy is applied.
+     */
+    final void setup(int parallelism, Config config) {
+        if (parallelism <= 0) {
+            throw new RuntimeException("worker-size must larger than zero");
+        }
+        queueSize = config.hasPath("queue-size") ? config.getInt("queue-size") : DEFAULT_QUEUE_SIZE;
+        if (queueSize <= 0) {
+            throw new RuntimeException("queue-size must larger than zero");
+        }
+        maxInFlight = config.hasPath("max-in-flight") ? config.getInt("max-in-flight") : parallelism;
+        if (maxInFlight <= 0) {
+            throw new RuntimeException("max-in-flight must larger than zero");
+        }
+        if (config.hasPath("saturation-policy")) {
+            saturationPolicy = SaturationPolicy.valueOf(config.getString("saturation-policy")
+                    .trim()
+                    .toUpperCase()
+                    .replace('-', '_'));
+        }
+        permits = new Semaphore(queueSize);
         final ForkJoinWorkerThreadFactory workerThreadFactory = (ForkJoinPool pool) -> {
             final ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
-            worker.setName("queryspliterator-" + worker.getPoolIndex());
+            worker.setName("queryspliterator-" + name + "-" + worker.getPoolIndex());
             return worker;
         };
-        LOGGER.info("Create fork join pool for zeus framework with number of parallelism is {}", parallelism);
+        LOGGER.info("Create fork join pool {} with number of parallelism is {}, max in-flight chunks is {}, queue size is {} and saturation policy is {}",
+                name, parallelism, maxInFlight, queueSize, saturationPolicy);
         forkJoinPool = new ForkJoinPool(parallelism, workerThreadFactory, (Thread t, Throwable e) -> {
             LOGGER.error("Can not process query on thread {}", t == null ? "N/A" : t.getName(), e);
         }, true);
     }
 
-    final <T extends Object> List<T> invoke(String txId, List<QueryTask> tasks) {
-        QueryRecursiveTask queryRecursiveTask = new QueryRecursiveTask(txId, tasks);
-        List<List<T>> list = (List<List<T>>) forkJoinPool.invoke(queryRecursiveTask);
-        return list.stream()
-                .flatMap((t) -> {
-                    return t.stream();
-                })
-                .collect(Collectors.toList());
+    /**
+     * @return parallelism of the pool or 1 if it is not started
+     */
+    final int parallelism() {
+        ForkJoinPool pool = forkJoinPool;
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    final void setMetrics(RepositoryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return true if the invocation can go to the pool, false if it must run
+     * in the calling thread
+     */
+    private boolean acquire() {
+        if (forkJoinPool == null) {
+            throw new RejectedExecutionException("query-spliterator " + name + " is not started");
+        }
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        switch (saturationPolicy) {
+            case ABORT:
+                rejected.increment();
+                throw new RejectedExecutionException("query-spliterator " + name + " is saturated");
+            case BLOCK:
+                try {
+                    permits.acquire();
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    rejected.increment();
+                    throw new RejectedExecutionException("Interrupted while waiting for query-spliterator " + name, e);
+                }
+            default:
+                callerRuns.increment();
+                return false;
+        }
+    }
+
+    /**
+     * @return result of every task in the order of tasks
+     */
+    final <T extends Object> List<List<T>> invoke(String txId, List<QueryTask> tasks) {
+        invocations.increment();
+        if (acquire()) {
+            try {
+                QueryRecursiveTask queryRecursiveTask = new QueryRecursiveTask(txId, tasks, maxInFlight, metrics);
+                forkJoinPool.invoke(queryRecursiveTask);
+                rethrow(queryRecursiveTask.failure());
+                return (List<List<T>>) (List) Arrays.asList(queryRecursiveTask.results());
+            } finally {
+                permits.release();
+            }
+        }
+        List<List<T>> list = new ArrayList<>(tasks.size());
+        for (QueryTask task : tasks) {
+            list.add((List<T>) QueryRecursiveTask.exec(task, metrics));
+        }
+        return list;
     }
 
     final int invokeUpdate(String txId, List<UpdateTask> tasks) {
-        UpdateRecursiveTask recursiveTasks = new UpdateRecursiveTask(txId, tasks);
-        return (Integer) forkJoinPool.invoke(recursiveTasks);
+        invocations.increment();
+        if (acquire()) {
+            try {
+                UpdateRecursiveTask recursiveTasks = new UpdateRecursiveTask(txId, tasks, maxInFlight, metrics);
+                forkJoinPool.invoke(recursiveTasks);
+                rethrow(recursiveTasks.failure());
+                return recursiveTasks.sum();
+            } finally {
+                permits.release();
+            }
+        }
+        int sum = 0;
+        for (UpdateTask task : tasks) {
+            sum += UpdateRecursiveTask.exec(task, metrics);
+        }
+        return sum;
+    }
+
+    /**
+     * Execute every task with at most parallelism tasks in flight, a failed
+     * task does not stop the others
+     */
+    final PartitionRecursiveTask invokePartitions(String txId, List<UpdateTask> tasks, int parallelism) {
+        invocations.increment();
+        if (acquire()) {
+            try {
+                PartitionRecursiveTask partitionTask = new PartitionRecursiveTask(txId, tasks,
+                        Math.min(parallelism, maxInFlight), metrics);
+                forkJoinPool.invoke(partitionTask);
+                return partitionTask;
+            } finally {
+                permits.release();
+            }
+        }
+        PartitionRecursiveTask partitionTask = new PartitionRecursiveTask(txId, tasks, 1, metrics);
+        partitionTask.drain();
+        return partitionTask;
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure == null) {
+            return;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new RuntimeException(failure);
+    }
+
+    final QuerySpliteratorStats stats() {
+        ForkJoinPool pool = forkJoinPool;
+        if (pool == null) {
+            return new QuerySpliteratorStats(name, 0, 0, 0, 0, 0, 0, 0, queueSize, 0,
+                    invocations.sum(), rejected.sum(), callerRuns.sum());
+        }
+        return new QuerySpliteratorStats(name,
+                pool.getParallelism(),
+                pool.getPoolSize(),
+                pool.getActiveThreadCount(),
+                pool.getRunningThreadCount(),
+                pool.getQueuedSubmissionCount(),
+                pool.getQueuedTaskCount(),
+                pool.getStealCount(),
+                queueSize,
+                queueSize - permits.availablePermits(),
+                invocations.sum(),
+                rejected.sum(),
+                callerRuns.sum());
     }
 
     final void close() {
@@ -0,0 +1,111 @@
+package com.openwes.repository;
+
+/**
+ * Snapshot of the fork join pool used by {@link QuerySpliterator} of a data
+ * source.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class QuerySpliteratorStats {
+
+    private final String name;
+    private final int parallelism;
+    private final int poolSize;
+    private final int activeThreadCount;
+    private final int runningThreadCount;
+    private final int queuedSubmissionCount;
+    private final long queuedTaskCount;
+    private final long stealCount;
+    private final int queueSize;
+    private final int inFlightInvocations;
+    private final long invocations;
+    private final long rejectedInvocations;
+    private final long callerRunsInvocations;
+
+    QuerySpliteratorStats(String name, int parallelism, int poolSize, int activeThreadCount,
+            int runningThreadCount, int queuedSubmissionCount, long queuedTaskCount, long stealCount,
+            int queueSize, int inFlightInvocations, long invocations, long rejectedInvocations,
+            long callerRunsInvocations) {
+        this.name = name;
+        this.parallelism = parallelism;
+        this.poolSize = poolSize;
+        this.activeThreadCount = activeThreadCount;
+        this.runningThreadCount = runningThreadCount;
+        this.queuedSubmissionCount = queuedSubmissionCount;
+        this.queuedTaskCount = queuedTaskCount;
+        this.stealCount = stealCount;
+        this.queueSize = queueSize;
+        this.inFlightInvocations = inFlightInvocations;
+        this.invocations = invocations;
+        this.rejectedInvocations = rejectedInvocations;
+        this.callerRunsInvocations = callerRunsInvocations;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getActiveThreadCount() {
+        return activeThreadCount;
+    }
+
+    public int getRunningThreadCount() {
+        return runningThreadCount;
+    }
+
+    public int getQueuedSubmissionCount() {
+        return queuedSubmissionCount;
+    }
+
+    public long getQueuedTaskCount() {
+        return queuedTaskCount;
+    }
+
+    public long getStealCount() {
+        return stealCount;
+    }
+
+    /**
+     * @return max number of concurrent invocations
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getInFlightInvocations() {
+        return inFlightInvocations;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getRejectedInvocations() {
+        return rejectedInvocations;
+    }
+
+    public long getCallerRunsInvocations() {
+        return callerRunsInvocations;
+    }
+
+    @Override
+    public String toString() {
+        return "QuerySpliteratorStats{" + "name=" + name + ", parallelism=" + parallelism
+                + ", poolSize=" + poolSize + ", activeThreadCount=" + activeThreadCount
+                + ", runningThreadCount=" + runningThreadCount + ", queuedSubmissionCount=" + queuedSubmissionCount
+                + ", queuedTaskCount=" + queuedTaskCount + ", stealCount=" + stealCount
+                + ", queueSize=" + queueSize + ", inFlightInvocations=" + inFlightInvocations
+                + ", invocations=" + invocations + ", rejectedInvocations=" + rejectedInvocations
+                + ", callerRunsInvocations=" + callerRunsInvocations + '}';
+    }
+
+}
@@ -10,35 +10,37 @@ import org.slf4j.LoggerFactory;
 public abstract class Repository {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(Repository.class);
-    private volatile boolean statsSql = false;
-    private volatile boolean statsTime = false;
+    private volatile RepositoryProvider provider;
 
     public abstract String dataSource();
 
     protected boolean isStatsSql() {
-        return statsSql;
+        return findProvider().isStatsSQL();
     }
 
     protected boolean isStatsTime() {
-        return statsTime;
+        return findProvider().isStatsTime();
     }
 
+    /**
+     * @return provider of the data source. It is resolved once and bound to
+     * this repository, data sources are never replaced after startup.
+     */
     protected final RepositoryProvider findProvider() {
-        RepositoryProvider provider = DataSourceManager.instance().provider(dataSource());
-        if (provider == null) {
+        RepositoryProvider _provider = provider;
+        if (_provider != null) {
+            return _provider;
+        }
+        _provider = DataSourceManager.instance().provider(dataSource());
+        if (_provider == null) {
             throw new RuntimeException("Not found DataAccessProvider for " + dataSource());
         }
-        statsSql = provider.isStatsSQL();
-        statsTime = provider.isStatsTime();
-        return provider;
+        provider = _provider;
+        return _provider;
     }
 
     protected final int getMaxCollectionSize() {
-        RepositoryProvider provider = findProvider();
-        if (provider == null) {
-            throw new RuntimeException("Not found DataAccessProvider for " + dataSource());
-        }
-        return provider.getMaxCollectionSize();
+        return findProvider().getMaxCollectionSize();
     }
 
 }
@@ -0,0 +1,55 @@
+package com.openwes.repository;
+
+/**
+ * Records latency, in-flight count, rows and errors of repository
+ * operations. Every data source owns an instance, it is
+ * {@link DefaultRepositoryMetrics} unless metrics.class is configured. An
+ * adapter to another metrics library (e.g. Micrometer) implements this
+ * interface and has a public no-argument constructor.
+ *
+ * Implementations are called on every repository call and must be
+ * thread-safe and non-blocking.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public interface RepositoryMetrics {
+
+    public final static RepositoryMetrics NOOP = new RepositoryMetrics() {
+        @Override
+        public long start(Operation operation) {
+            return 0;
+        }
+
+        @Override
+        public void stop(Operation operation, long start, long rows, boolean failed) {
+        }
+    };
+
+    /**
+     * Called by data source with its name before the first operation
+     *
+     * @param dataSourceName
+     */
+    public default void bind(String dataSourceName) {
+    }
+
+    /**
+     * Operation is started
+     *
+     * @param operation
+     * @return start time in nanoseconds which is passed to
+     * {@link #stop(Operation, long, long, boolean)}
+     */
+    public long start(Operation operation);
+
+    /**
+     * Operation is completed
+     *
+     * @param operation
+     * @param start value returned by {@link #start(Operation)}
+     * @param rows number of rows returned or affected, negative if unknown
+     * @param failed
+     */
+    public void stop(Operation operation, long start, long rows, boolean failed);
+}
@@ -1,6 +1,22 @@
 package com.openwes.repository;
 
+import com.openwes.core.logging.LogContext;
+import com.openwes.core.utils.ClassUtils;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 /**
  *
@@ -9,11 +25,18 @@ import com.typesafe.config.Config;
  */
 public abstract class RepositoryProvider<T extends RepositoryTransaction> {
 
+    private final static Logger LOGGER = LoggerFactory.getLogger(RepositoryProvider.class);
+    public final static int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
     private String dataSourceName;
     private boolean statsSQL = false;
     private boolean statsTime = false;
     private final ThreadLocal<T> currentTransaction = new ThreadLocal<>();
     private int maxCollectionSize = 1000;
+    private boolean inClausePadding = false;
+    private ThreadPoolExecutor asyncExecutor;
+    private QuerySpliteratorEnv spliteratorEnv;
+    private RepositoryMetrics metrics = RepositoryMetrics.NOOP;
+    private SlowQueryTracker slowQueryTracker;
     public final static String CATALOG_IGNORE_DTO = "CATALOG_INGORE_DTO",
             CATALOG_IGNORE_VIEW = "CATALOG_INGORE_VIEW";
 
@@ -25,6 +48,18 @@ public abstract class RepositoryProvider<T extends RepositoryTransaction> {
         this.maxCollectionSize = maxCollectionSize;
     }
 
+    /**
+     * @return true if IN-list parameters are padded to power of two sizes so
+     * that collections of similar size produce the same SQL
+     */
+    public boolean isInClausePadding() {
+        return inClausePadding;
+    }
+
+    public void setInClausePadding(boolean inClausePadding) {
+        this.inClausePadding = inClausePadding;
+    }
+
     public final boolean isStatsSQL() {
         return statsSQL;
     }
@@ -58,7 +93,11 @@ public abstract class RepositoryProvider<T extends RepositoryTransaction> {
     }
 
     public final void removeCurrentTransaction() {
-        currentTransaction.remove();
+        /**
+         * Keep the thread local entry, it is set again by the next call of
+         * this thread
+         */
+        currentTransaction.set(null);
     }
 
     void start(Config config) throws Exception {
@@ -73,13 +112,235 @@ public abstract class RepositoryProvider<T extends RepositoryTransaction> {
         if (config.hasPath("spliterator-size")) {
             setMaxCollectionSize(config.getInt("spliterator-size"));
         }
+
+        if (config.hasPath("in-clause-padding")) {
+            setInClausePadding(config.getBoolean("in-clause-padding"));
+        }
+        setupMetrics(config);
+        setupSlowQueryTracker(config);
         onStart(config);
+        setupAsyncExecutor(config);
+        setupSpliteratorEnv(config);
     }
     
     void stop(Config config) throws Exception{
+        if (spliteratorEnv != null) {
+            spliteratorEnv.close();
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+            if (!asyncExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                asyncExecutor.shutdownNow();
+            }
+        }
         onStop(config);
     }
 
+    /**
+     * Metrics are enabled by default. metrics.class replaces
+     * {@link DefaultRepositoryMetrics} by another implementation.
+     */
+    private void setupMetrics(Config config) throws Exception {
+        if (config.hasPath("metrics.enabled") && !config.getBoolean("metrics.enabled")) {
+            metrics = RepositoryMetrics.NOOP;
+            return;
+        }
+        if (config.hasPath("metrics.class")) {
+            metrics = ClassUtils.object(config.getString("metrics.class"));
+        } else {
+            metrics = new DefaultRepositoryMetrics();
+        }
+        metrics.bind(dataSourceName);
+        LOGGER.info("Record metrics of data-source {} with {}", dataSourceName, metrics.getClass().getName());
+    }
+
+    public final RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return stats of operations or empty if metrics are disabled or
+     * recorded by a custom implementation
+     */
+    public final List<OperationStats> getOperationStats() {
+        if (metrics instanceof DefaultRepositoryMetrics) {
+            return ((DefaultRepositoryMetrics) metrics).getStats();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Slow query tracker is enabled by a slow-query block
+     */
+    private void setupSlowQueryTracker(Config config) {
+        if (!config.hasPath("slow-query")
+                || (config.hasPath("slow-query.enabled") && !config.getBoolean("slow-query.enabled"))) {
+            return;
+        }
+        Config slowQueryConfig = config.getConfig("slow-query");
+        long threshold = slowQueryConfig.hasPath("threshold")
+                ? slowQueryConfig.getDuration("threshold", TimeUnit.MILLISECONDS)
+                : SlowQueryTracker.DEFAULT_THRESHOLD_MS;
+        int maxFingerprints = slowQueryConfig.hasPath("max-fingerprints")
+                ? slowQueryConfig.getInt("max-fingerprints")
+                : SlowQueryTracker.DEFAULT_MAX_FINGERPRINTS;
+        slowQueryTracker = new SlowQueryTracker(dataSourceName, threshold, maxFingerprints);
+        LOGGER.info("Enable slow query tracker of data-source {} with threshold {} ms and max {} fingerprints",
+                dataSourceName, threshold, maxFingerprints);
+    }
+
+    /**
+     * @return slow query tracker or null if it is not enabled
+     */
+    public final SlowQueryTracker getSlowQueryTracker() {
+        return slowQueryTracker;
+    }
+
+    /**
+     * Create executor for asynchronous repository calls. By default it has as
+     * many workers as the connection pool of this data source, a larger value
+     * is capped to the connection pool size because extra workers could only
+     * wait for connections.
+     */
+    private void setupAsyncExecutor(Config config) {
+        int maxConnections = getMaxConnections();
+        int workerSize = config.hasPath("async.worker-size")
+                ? config.getInt("async.worker-size")
+                : (maxConnections > 0 ? maxConnections : Runtime.getRuntime().availableProcessors());
+        if (workerSize <= 0) {
+            throw new RuntimeException("async.worker-size must larger than zero");
+        }
+        if (maxConnections > 0 && workerSize > maxConnections) {
+            LOGGER.warn("async.worker-size {} of data-source {} is larger than connection pool size {}, use {}",
+                    workerSize, dataSourceName, maxConnections, maxConnections);
+            workerSize = maxConnections;
+        }
+        int queueSize = config.hasPath("async.queue-size")
+                ? config.getInt("async.queue-size") : DEFAULT_ASYNC_QUEUE_SIZE;
+        if (queueSize <= 0) {
+            throw new RuntimeException("async.queue-size must larger than zero");
+        }
+        final AtomicInteger index = new AtomicInteger(0);
+        final String prefix = "repository-async-" + dataSourceName + "-";
+        asyncExecutor = new ThreadPoolExecutor(workerSize, workerSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), (Runnable r) -> {
+                    Thread thread = new Thread(r, prefix + index.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        asyncExecutor.allowCoreThreadTimeOut(true);
+        LOGGER.info("Create async executor for data-source {} with {} workers and queue size {}",
+                dataSourceName, workerSize, queueSize);
+    }
+
+    /**
+     * Create fork join pool for {@link QuerySpliterator} of this data source.
+     * By default its parallelism is the connection pool size, a larger value
+     * is capped to the connection pool size.
+     */
+    private void setupSpliteratorEnv(Config config) {
+        Config envConfig = config.hasPath("query-spliterator")
+                ? config.getConfig("query-spliterator") : ConfigFactory.empty();
+        int maxConnections = getMaxConnections();
+        int parallelism = envConfig.hasPath("worker-size")
+                ? envConfig.getInt("worker-size")
+                : (maxConnections > 0 ? maxConnections : Runtime.getRuntime().availableProcessors());
+        if (maxConnections > 0 && parallelism > maxConnections) {
+            LOGGER.warn("query-spliterator.worker-size {} of data-source {} is larger than connection pool size {}, use {}",
+                    parallelism, dataSourceName, maxConnections, maxConnections);
+            parallelism = maxConnections;
+        }
+        spliteratorEnv = new QuerySpliteratorEnv(dataSourceName);
+        spliteratorEnv.setMetrics(metrics);
+        spliteratorEnv.setup(parallelism, envConfig);
+    }
+
+    final QuerySpliteratorEnv spliteratorEnv() {
+        if (spliteratorEnv == null) {
+            throw new RuntimeException("query-spliterator of data-source " + dataSourceName + " is not started");
+        }
+        return spliteratorEnv;
+    }
+
+    public final QuerySpliteratorStats getSpliteratorStats() {
+        return spliteratorEnv().stats();
+    }
+
+    /**
+     * Write partitions on the query-spliterator pool of this data source.
+     * Every partition is written by writer on its own, usually in its own
+     * transaction, and a failed partition does not stop the others. At most
+     * parallelism partitions are written at the same time, it is capped by
+     * the pool parallelism which is never larger than the connection pool
+     * size.
+     *
+     * @param <T>
+     * @param partitions
+     * @param parallelism
+     * @param writer
+     * @return result of every partition
+     */
+    public final <T> PartitionedWriteReport<T> writePartitions(List<List<T>> partitions, int parallelism, PartitionWriter<T> writer) {
+        long begin = System.nanoTime();
+        List<UpdateTask> tasks = new ArrayList<>(partitions.size());
+        partitions.forEach(partition -> tasks.add(() -> writer.write(partition)));
+        QuerySpliteratorEnv env = spliteratorEnv();
+        int _parallelism = Math.max(1, Math.min(parallelism, env.parallelism()));
+        PartitionRecursiveTask task = env.invokePartitions(MDC.get(LogContext.TXID), tasks, _parallelism);
+        List<PartitionResult<T>> results = new ArrayList<>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            results.add(new PartitionResult<>(i, partitions.get(i), task.rows(i), task.failure(i), task.elapsedUs(i)));
+        }
+        PartitionedWriteReport<T> report = new PartitionedWriteReport<>(results, (System.nanoTime() - begin) / 1000);
+        if (!report.isSuccess()) {
+            LOGGER.warn("{} of {} partitions of data-source {} failed", report.getFailedPartitions().size(),
+                    partitions.size(), dataSourceName);
+        }
+        return report;
+    }
+
+    /**
+     * @return parallelism of the query-spliterator pool of this data source
+     */
+    public final int getSpliteratorParallelism() {
+        return spliteratorEnv().parallelism();
+    }
+
+    /**
+     * Run supplier on the async executor of this data source. The transaction
+     * id in logging context is carried to the worker thread. The future
+     * completes exceptionally with {@link RejectedExecutionException} when the
+     * executor queue is full.
+     *
+     * @param <R>
+     * @param supplier
+     * @return
+     */
+    public final <R> CompletableFuture<R> supplyAsync(Supplier<R> supplier) {
+        if (asyncExecutor == null) {
+            throw new RuntimeException("Async executor of data-source " + dataSourceName + " is not started");
+        }
+        final String txId = MDC.get(LogContext.TXID);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                LogContext.set(LogContext.TXID, txId);
+                return supplier.get();
+            }, asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * @return max number of connections of this data source or -1 if it is
+     * unknown
+     */
+    public int getMaxConnections() {
+        return -1;
+    }
+
     public abstract void onStart(Config config) throws Exception;
 
     public abstract void onStop(Config config) throws Exception;
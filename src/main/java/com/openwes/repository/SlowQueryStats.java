@@ -0,0 +1,73 @@
+package com.openwes.repository;
+
+/**
+ * Aggregated executions of a query fingerprint recorded by
+ * {@link SlowQueryTracker}. Latencies are in microseconds.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class SlowQueryStats {
+
+    private final String fingerprint;
+    private final long count;
+    private final long slowCount;
+    private final long rows;
+    private final long totalTimeUs;
+    private final long maxTimeUs;
+    private final long p99Us;
+
+    SlowQueryStats(String fingerprint, long count, long slowCount, long rows,
+            long totalTimeUs, long maxTimeUs, long p99Us) {
+        this.fingerprint = fingerprint;
+        this.count = count;
+        this.slowCount = slowCount;
+        this.rows = rows;
+        this.totalTimeUs = totalTimeUs;
+        this.maxTimeUs = maxTimeUs;
+        this.p99Us = p99Us;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of executions which took longer than threshold
+     */
+    public long getSlowCount() {
+        return slowCount;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getTotalTimeUs() {
+        return totalTimeUs;
+    }
+
+    public long getMeanTimeUs() {
+        return count == 0 ? 0 : totalTimeUs / count;
+    }
+
+    public long getMaxTimeUs() {
+        return maxTimeUs;
+    }
+
+    public long getP99Us() {
+        return p99Us;
+    }
+
+    @Override
+    public String toString() {
+        return "SlowQueryStats{" + "fingerprint=" + fingerprint + ", count=" + count
+                + ", slowCount=" + slowCount + ", rows=" + rows + ", totalTimeUs=" + totalTimeUs
+                + ", maxTimeUs=" + maxTimeUs + ", p99Us=" + p99Us + '}';
+    }
+
+}
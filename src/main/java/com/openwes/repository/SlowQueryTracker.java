@@ -0,0 +1,199 @@
+package com.openwes.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregate executions of HQL/SQL queries by fingerprint. A fingerprint is
+ * the query with literals replaced by <code>?</code>, lists of literals or
+ * positional parameters collapsed to <code>(?+)</code> and whitespaces
+ * collapsed, so executions which only differ by values are counted
+ * together.
+ *
+ * The table holds at most max-fingerprints entries, executions of new
+ * fingerprints are counted in {@link #OTHERS} when it is full. Only
+ * executions which take longer than threshold are logged.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class SlowQueryTracker {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SlowQueryTracker.class);
+    public final static String OTHERS = "<others>";
+    public final static long DEFAULT_THRESHOLD_MS = 1000;
+    public final static int DEFAULT_MAX_FINGERPRINTS = 1000;
+
+    private final static Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private final static Pattern NUMBER_LITERAL = Pattern.compile("(?<![A-Za-z0-9_$:.?])-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?[LlDdFf]?\\b");
+    private final static Pattern POSITIONAL_PARAMETER = Pattern.compile("\\?\\d+");
+    private final static Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private final static Pattern WHITESPACES = Pattern.compile("\\s+");
+
+    private final static class Entry {
+
+        private final String fingerprint;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder slowCount = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Entry(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private final String dataSourceName;
+    private final long thresholdNanos;
+    private final int maxFingerprints;
+    private final Cache<String, String> fingerprints;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Entry others = new Entry(OTHERS);
+
+    public SlowQueryTracker(String dataSourceName, long thresholdMs, int maxFingerprints) {
+        if (thresholdMs < 0) {
+            throw new RuntimeException("slow-query.threshold must not be negative");
+        }
+        if (maxFingerprints <= 0) {
+            throw new RuntimeException("slow-query.max-fingerprints must be larger than zero");
+        }
+        this.dataSourceName = dataSourceName;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.maxFingerprints = maxFingerprints;
+        this.fingerprints = CacheBuilder.newBuilder()
+                .maximumSize(maxFingerprints * 4L)
+                .build();
+    }
+
+    /**
+     * @param query HQL or SQL
+     * @return normalized query
+     */
+    public static String fingerprint(String query) {
+        String result = STRING_LITERAL.matcher(query).replaceAll("?");
+        result = POSITIONAL_PARAMETER.matcher(result).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = PARAMETER_LIST.matcher(result).replaceAll("(?+)");
+        return WHITESPACES.matcher(result).replaceAll(" ").trim();
+    }
+
+    private String cachedFingerprint(String query) {
+        try {
+            return fingerprints.get(query, () -> fingerprint(query));
+        } catch (ExecutionException e) {
+            return fingerprint(query);
+        }
+    }
+
+    /**
+     * Record an execution of query
+     *
+     * @param query
+     * @param params parameters of query, they are only logged if execution
+     * is slow
+     * @param elapsedNanos
+     * @param rows number of rows returned or affected, negative if unknown
+     */
+    public void record(String query, Map<String, Object> params, long elapsedNanos, long rows) {
+        String fingerprint = cachedFingerprint(query);
+        Entry entry = entries.get(fingerprint);
+        if (entry == null) {
+            entry = entries.size() < maxFingerprints
+                    ? entries.computeIfAbsent(fingerprint, Entry::new)
+                    : others;
+        }
+        entry.count.increment();
+        entry.totalNanos.add(elapsedNanos);
+        entry.maxNanos.accumulate(elapsedNanos);
+        entry.histogram.record(elapsedNanos);
+        if (rows > 0) {
+            entry.rows.add(rows);
+        }
+        if (elapsedNanos >= thresholdNanos) {
+            entry.slowCount.increment();
+            LOGGER.warn("Slow query on data-source {} in {} ms, {} rows: {} with parameters {}",
+                    dataSourceName, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rows, query, params);
+        }
+    }
+
+    private SlowQueryStats stats(Entry entry) {
+        long[] percentiles = entry.histogram.percentiles(0.99);
+        return new SlowQueryStats(entry.fingerprint,
+                entry.count.sum(),
+                entry.slowCount.sum(),
+                entry.rows.sum(),
+                TimeUnit.NANOSECONDS.toMicros(entry.totalNanos.sum()),
+                TimeUnit.NANOSECONDS.toMicros(entry.maxNanos.get()),
+                TimeUnit.NANOSECONDS.toMicros(percentiles[0]));
+    }
+
+    /**
+     * @param n
+     * @return at most n fingerprints with the largest total time
+     */
+    public List<SlowQueryStats> top(int n) {
+        return top(n, Comparator.comparingLong(SlowQueryStats::getTotalTimeUs).reversed());
+    }
+
+    /**
+     * @param n
+     * @param order
+     * @return at most n fingerprints in order
+     */
+    public List<SlowQueryStats> top(int n, Comparator<SlowQueryStats> order) {
+        List<SlowQueryStats> result = new ArrayList<>(entries.size() + 1);
+        entries.values().forEach(entry -> result.add(stats(entry)));
+        Entry _others = others;
+        if (_others.count.sum() > 0) {
+            result.add(stats(_others));
+        }
+        result.sort(order);
+        return result.size() > n ? new ArrayList<>(result.subList(0, n)) : result;
+    }
+
+    /**
+     * @param n
+     * @return text report of top n fingerprints by total time
+     */
+    public String report(int n) {
+        StringBuilder builder = new StringBuilder()
+                .append("Top ").append(n).append(" queries of data-source ").append(dataSourceName)
+                .append(" by total time:");
+        int i = 0;
+        for (SlowQueryStats stats : top(n)) {
+            builder.append('\n').append(++i).append(". total=").append(stats.getTotalTimeUs()).append("us")
+                    .append(" count=").append(stats.getCount())
+                    .append(" slow=").append(stats.getSlowCount())
+                    .append(" mean=").append(stats.getMeanTimeUs()).append("us")
+                    .append(" p99=").append(stats.getP99Us()).append("us")
+                    .append(" max=").append(stats.getMaxTimeUs()).append("us")
+                    .append(" rows=").append(stats.getRows())
+                    .append(" | ").append(stats.getFingerprint());
+        }
+        return builder.toString();
+    }
+
+    public void reset() {
+        entries.clear();
+        others = new Entry(OTHERS);
+    }
+
+    public long getThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+}
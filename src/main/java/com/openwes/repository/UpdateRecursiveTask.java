@@ -2,60 +2,97 @@ package com.openwes.repository;
 
 import com.openwes.core.logging.LogContext;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.RecursiveTask;
-import java.util.stream.Collectors;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * 
+ * Execute update chunks with at most fanOut chunks in flight and sum the
+ * number of affected rows. When a chunk fails, chunks which are not started
+ * yet are skipped and the first failure is kept in {@link #failure()}.
+ *
  * @author xuanloc0511@gmail.com
- * 
+ *
  */
-class UpdateRecursiveTask extends RecursiveTask {
+class UpdateRecursiveTask extends RecursiveAction {
 
     private final String txId;
     private final List<UpdateTask> tasks;
+    private final AtomicInteger cursor;
+    private final AtomicReference<Throwable> failure;
+    private final int fanOut;
+    private final RepositoryMetrics metrics;
+    private int sum = 0;
 
-    public UpdateRecursiveTask(String txId, List<UpdateTask> tasks) {
+    public UpdateRecursiveTask(String txId, List<UpdateTask> tasks, int fanOut, RepositoryMetrics metrics) {
+        this(txId, tasks, new AtomicInteger(0), new AtomicReference<>(), fanOut, metrics);
+    }
+
+    private UpdateRecursiveTask(String txId, List<UpdateTask> tasks, AtomicInteger cursor,
+            AtomicReference<Throwable> failure, int fanOut, RepositoryMetrics metrics) {
         this.txId = txId;
+        this.metrics = metrics;
         this.tasks = tasks;
+        this.cursor = cursor;
+        this.failure = failure;
+        this.fanOut = Math.max(1, Math.min(fanOut, tasks.size()));
     }
 
     @Override
-    protected Integer compute() {
+    protected void compute() {
         LogContext.set(LogContext.TXID, txId);
-        try {
-            List<Integer> results = new ArrayList<>();
-            if (tasks.isEmpty()) {
-                return 0;
+        List<UpdateRecursiveTask> workers = null;
+        if (fanOut > 1) {
+            workers = new ArrayList<>(fanOut - 1);
+            for (int i = 1; i < fanOut; i++) {
+                UpdateRecursiveTask worker = new UpdateRecursiveTask(txId, tasks, cursor, failure, 1, metrics);
+                worker.fork();
+                workers.add(worker);
+            }
+        }
+        drain();
+        if (workers != null) {
+            for (UpdateRecursiveTask worker : workers) {
+                if (failure.get() != null) {
+                    worker.cancel(false);
+                }
+                worker.quietlyJoin();
+                sum += worker.sum;
             }
-            if (tasks.size() == 1) {
-                results.addAll(tasks.stream()
-                        .map((UpdateTask t) -> t.onExec())
-                        .collect(Collectors.toList()));
-            } else {
-                List<RecursiveTask> subs = tasks.stream()
-                        .map((t) -> {
-                            return new UpdateRecursiveTask(txId, Collections.singletonList(t));
-                        }).collect(Collectors.toList());
-                subs.forEach((task) -> {
-                    task.fork();
-                });
-
-                int sum = subs.stream()
-                        .map((task) -> (Integer) task.join())
-                        .mapToInt((value) -> {
-                            return value;
-                        })
-                        .sum();
-                results.add(sum);
+        }
+    }
+
+    private void drain() {
+        int i;
+        while (failure.get() == null && (i = cursor.getAndIncrement()) < tasks.size()) {
+            try {
+                sum += exec(tasks.get(i), metrics);
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
             }
-            return results.stream()
-                    .mapToInt((t) -> t)
-                    .sum();
+        }
+    }
+
+    static int exec(UpdateTask task, RepositoryMetrics metrics) {
+        long start = metrics.start(Operation.CHUNK);
+        boolean failed = true;
+        int rows = 0;
+        try {
+            rows = task.onExec();
+            failed = false;
+            return rows;
         } finally {
+            metrics.stop(Operation.CHUNK, start, rows, failed);
         }
     }
 
+    int sum() {
+        return sum;
+    }
+
+    Throwable failure() {
+        return failure.get();
+    }
+
 }
@@ -0,0 +1,138 @@
+package com.openwes.repository.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+
+/**
+ * Multi-row upsert of entities of one table. The statement depends on the
+ * dialect:
+ * <ul>
+ * <li>H2: <code>MERGE INTO ... USING (VALUES ...) ON (conflict keys)</code></li>
+ * <li>PostgreSQL 9.5+: <code>INSERT ... VALUES ... ON CONFLICT (conflict keys)
+ * DO UPDATE</code></li>
+ * <li>MySQL/MariaDB: <code>INSERT ... VALUES ... ON DUPLICATE KEY UPDATE</code>,
+ * conflicts are detected on any unique key of the table</li>
+ * </ul>
+ * Identifier and conflict key columns are never updated. If the identifier
+ * is generated by the database the conflict keys must be passed.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class BulkUpsert extends MultiRowStatement {
+
+    enum Style {
+        MERGE, ON_CONFLICT, ON_DUPLICATE_KEY
+    }
+
+    private final Style style;
+    private final List<String> conflictColumns = new ArrayList<>();
+    private final List<String> updateColumns = new ArrayList<>();
+
+    BulkUpsert(EntityTable table, Dialect dialect, String... conflictKeys) {
+        super(table);
+        this.style = styleOf(dialect);
+        if (conflictKeys == null || conflictKeys.length == 0) {
+            conflictColumns.addAll(Arrays.asList(table.getIdColumns()));
+        } else {
+            for (String key : conflictKeys) {
+                conflictColumns.addAll(Arrays.asList(table.columnsOf(key)));
+            }
+        }
+        if (!table.getColumns().containsAll(conflictColumns)) {
+            /**
+             * Identifier generated by the database, e.g. identity, is not in
+             * VALUES so it can not be the conflict target
+             */
+            throw new RuntimeException("Bulk upsert of " + table.getEntityName() + " can not detect conflicts on "
+                    + conflictColumns + " because the identifier is generated by the database,"
+                    + " pass unique properties as conflict keys");
+        }
+        Set<String> fixed = new HashSet<>(conflictColumns);
+        fixed.addAll(Arrays.asList(table.getIdColumns()));
+        table.getColumns().stream()
+                .filter(column -> !fixed.contains(column))
+                .forEach(updateColumns::add);
+    }
+
+    static Style styleOf(Dialect dialect) {
+        if (dialect instanceof H2Dialect) {
+            return Style.MERGE;
+        }
+        if (dialect instanceof PostgreSQL95Dialect) {
+            return Style.ON_CONFLICT;
+        }
+        if (dialect instanceof PostgreSQL81Dialect) {
+            throw new RuntimeException("Bulk upsert requires PostgreSQL 9.5+ (ON CONFLICT), dialect "
+                    + dialect.getClass().getName() + " is older, use PostgreSQL95Dialect or newer");
+        }
+        if (dialect instanceof MySQLDialect) {
+            return Style.ON_DUPLICATE_KEY;
+        }
+        throw new RuntimeException("Bulk upsert is not supported by dialect " + dialect.getClass().getName());
+    }
+
+    @Override
+    String sql(int rows) {
+        List<String> columns = table.getColumns();
+        String columnList = String.join(", ", columns);
+        String values = values(rows);
+        StringBuilder sql = new StringBuilder();
+        switch (style) {
+            case MERGE:
+                sql.append("MERGE INTO ").append(table.getTable()).append(" t USING (SELECT * FROM (VALUES ")
+                        .append(values).append(") v (").append(columnList).append(")) s ON (");
+                for (int i = 0; i < conflictColumns.size(); i++) {
+                    String column = conflictColumns.get(i);
+                    sql.append(i == 0 ? "" : " AND ").append("t.").append(column).append(" = s.").append(column);
+                }
+                sql.append(')');
+                if (!updateColumns.isEmpty()) {
+                    sql.append(" WHEN MATCHED THEN UPDATE SET ");
+                    for (int i = 0; i < updateColumns.size(); i++) {
+                        String column = updateColumns.get(i);
+                        sql.append(i == 0 ? "" : ", ").append(column).append(" = s.").append(column);
+                    }
+                }
+                sql.append(" WHEN NOT MATCHED THEN INSERT (").append(columnList).append(") VALUES (");
+                for (int i = 0; i < columns.size(); i++) {
+                    sql.append(i == 0 ? "" : ", ").append("s.").append(columns.get(i));
+                }
+                return sql.append(')').toString();
+            case ON_CONFLICT:
+                sql.append("INSERT INTO ").append(table.getTable()).append(" (").append(columnList)
+                        .append(") VALUES ").append(values)
+                        .append(" ON CONFLICT (").append(String.join(", ", conflictColumns)).append(')');
+                if (updateColumns.isEmpty()) {
+                    return sql.append(" DO NOTHING").toString();
+                }
+                sql.append(" DO UPDATE SET ");
+                for (int i = 0; i < updateColumns.size(); i++) {
+                    String column = updateColumns.get(i);
+                    sql.append(i == 0 ? "" : ", ").append(column).append(" = EXCLUDED.").append(column);
+                }
+                return sql.toString();
+            default:
+                sql.append("INSERT INTO ").append(table.getTable()).append(" (").append(columnList)
+                        .append(") VALUES ").append(values)
+                        .append(" ON DUPLICATE KEY UPDATE ");
+                if (updateColumns.isEmpty()) {
+                    String column = columns.get(0);
+                    return sql.append(column).append(" = ").append(column).toString();
+                }
+                for (int i = 0; i < updateColumns.size(); i++) {
+                    String column = updateColumns.get(i);
+                    sql.append(i == 0 ? "" : ", ").append(column).append(" = VALUES(").append(column).append(')');
+                }
+                return sql.toString();
+        }
+    }
+}
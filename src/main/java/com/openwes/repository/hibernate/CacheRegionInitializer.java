@@ -0,0 +1,43 @@
+package com.openwes.repository.hibernate;
+
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.boot.CacheRegionDefinition;
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.spi.MetadataBuilderInitializer;
+import org.hibernate.engine.config.spi.ConfigurationService;
+
+/**
+ * Apply second level cache settings of entities which are declared in
+ * configuration as hibernate.classcache.[entity class] = usage[,region].
+ * Hibernate only reads these properties on JPA bootstrap, this initializer
+ * makes them work with native bootstrap used by HibernateProvider.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class CacheRegionInitializer implements MetadataBuilderInitializer {
+
+    public final static String CLASS_CACHE_PREFIX = "hibernate.classcache.";
+
+    @Override
+    public void contribute(MetadataBuilder metadataBuilder, StandardServiceRegistry serviceRegistry) {
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        settings.forEach((key, value) -> {
+            if (!(key instanceof String) || !((String) key).startsWith(CLASS_CACHE_PREFIX)) {
+                return;
+            }
+            String role = ((String) key).substring(CLASS_CACHE_PREFIX.length());
+            String[] parts = StringUtils.split(String.valueOf(value), ',');
+            if (parts == null || parts.length == 0 || parts.length > 2) {
+                throw new RuntimeException("Invalid cache setting " + key + " = " + value);
+            }
+            String usage = StringUtils.trim(parts[0]);
+            String region = parts.length == 2 ? StringUtils.trim(parts[1]) : role;
+            metadataBuilder.applyCacheRegionDefinition(new CacheRegionDefinition(
+                    CacheRegionDefinition.CacheRegionType.ENTITY, role, usage, region, true));
+        });
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.openwes.repository.hibernate;
+
+/**
+ * Snapshot of a Hibernate second level cache region.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class CacheRegionStats {
+
+    public enum Type {
+        DOMAIN_DATA, QUERY_RESULTS
+    }
+
+    private final String region;
+    private final Type type;
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long evictionCount;
+    private final long elementCountInMemory;
+    private final long sizeInMemory;
+
+    CacheRegionStats(String region, Type type, long hitCount, long missCount, long putCount,
+            long evictionCount, long elementCountInMemory, long sizeInMemory) {
+        this.region = region;
+        this.type = type;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.evictionCount = evictionCount;
+        this.elementCountInMemory = elementCountInMemory;
+        this.sizeInMemory = sizeInMemory;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    /**
+     * @return number of evictions reported by JCache statistics or -1 if the
+     * cache provider does not expose them
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of elements in memory or a negative value if unknown
+     */
+    public long getElementCountInMemory() {
+        return elementCountInMemory;
+    }
+
+    /**
+     * @return size in bytes or a negative value if unknown
+     */
+    public long getSizeInMemory() {
+        return sizeInMemory;
+    }
+
+    public double getHitRatio() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheRegionStats{" + "region=" + region + ", type=" + type
+                + ", hitCount=" + hitCount + ", missCount=" + missCount + ", putCount=" + putCount
+                + ", evictionCount=" + evictionCount + ", elementCountInMemory=" + elementCountInMemory
+                + ", sizeInMemory=" + sizeInMemory + '}';
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.openwes.repository.hibernate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.PersistenceUnitUtil;
+import org.hibernate.SessionFactory;
+
+/**
+ * Near cache of entities by id for findById/findByIds. Every configured
+ * entity class has its own cache bounded by number of entries and expiration
+ * after write.
+ *
+ * Writes through the repository evict the written ids, bulk HQL writes evict
+ * the whole class. Writes of an explicit transaction are evicted after it is
+ * committed, expiration after write bounds the life of an entry which misses
+ * an eviction, e.g. a write of another process. Cached entities are shared by all callers, they must not
+ * be modified without writing them back through the repository.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class EntityCache {
+
+    private final Map<Class<?>, Region> regions = new HashMap<>();
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final EntityNames entityNames;
+
+    EntityCache(SessionFactory sessionFactory) {
+        this.persistenceUnitUtil = sessionFactory.getPersistenceUnitUtil();
+        this.entityNames = new EntityNames(sessionFactory);
+    }
+
+    void register(Class<?> entityClass, long maxEntries, long expireAfterWriteMs) {
+        if (entityNames.resolve(entityClass.getName()) == null) {
+            throw new RuntimeException(entityClass.getName() + " is not a mapped entity");
+        }
+        regions.put(entityClass, new Region(CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(expireAfterWriteMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build()));
+    }
+
+    public boolean isCached(Class<?> entityClass) {
+        return regions.containsKey(entityClass);
+    }
+
+    /**
+     * @param entityClass
+     * @return generation of entity class, it must be taken before loading
+     * entities which will be put to this cache
+     */
+    long generation(Class<?> entityClass) {
+        Region region = regions.get(entityClass);
+        return region == null ? 0 : region.generation.get();
+    }
+
+    <E> E get(Class<E> entityClass, Object id) {
+        Region region = regions.get(entityClass);
+        if (region == null) {
+            return null;
+        }
+        return (E) region.cache.getIfPresent(key(id));
+    }
+
+    /**
+     * Put entity loaded at generation. It is ignored if the class was
+     * written after that.
+     */
+    void put(Class<?> entityClass, Object entity, long generation) {
+        Region region = regions.get(entityClass);
+        if (region == null || entity == null || region.generation.get() != generation) {
+            return;
+        }
+        Object id = persistenceUnitUtil.getIdentifier(entity);
+        if (id != null) {
+            region.cache.put(key(id), entity);
+        }
+    }
+
+    Object idOf(Object entity) {
+        return key(persistenceUnitUtil.getIdentifier(entity));
+    }
+
+    /**
+     * Evict entity which has been written
+     */
+    void evict(Class<?> entityClass, Object entity) {
+        Region region = regions.get(entityClass);
+        if (region == null) {
+            return;
+        }
+        region.generation.incrementAndGet();
+        Object id = persistenceUnitUtil.getIdentifier(entity);
+        if (id != null) {
+            region.cache.invalidate(key(id));
+        }
+    }
+
+    void evictAll(Class<?> entityClass) {
+        Region region = regions.get(entityClass);
+        if (region == null) {
+            return;
+        }
+        region.generation.incrementAndGet();
+        region.cache.invalidateAll();
+    }
+
+    /**
+     * Evict all entities of target of an HQL update or delete, or all
+     * entities if it can not be resolved
+     */
+    void evictAll(String query) {
+        Class<?> entityClass = entityNames.bulkTarget(query);
+        if (entityClass == null) {
+            evictAll();
+            return;
+        }
+        evictAll(entityClass);
+    }
+
+    void evictAll() {
+        regions.keySet().forEach(this::evictAll);
+    }
+
+    public CacheStats getStats(Class<?> entityClass) {
+        Region region = regions.get(entityClass);
+        return region == null ? null : region.cache.stats();
+    }
+
+    public long getSize(Class<?> entityClass) {
+        Region region = regions.get(entityClass);
+        return region == null ? 0 : region.cache.size();
+    }
+
+    public Map<Class<?>, CacheStats> getStats() {
+        Map<Class<?>, CacheStats> stats = new HashMap<>();
+        regions.forEach((entityClass, region) -> {
+            stats.put(entityClass, region.cache.stats());
+        });
+        return stats;
+    }
+
+    /**
+     * ids of the same entity may be long or int, normalize integral ids to
+     * long
+     */
+    private static Object key(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    private final static class Region {
+
+        private final Cache<Object, Object> cache;
+        private final AtomicLong generation = new AtomicLong(0);
+
+        Region(Cache<Object, Object> cache) {
+            this.cache = cache;
+        }
+    }
+}
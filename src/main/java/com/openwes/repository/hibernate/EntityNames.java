@@ -0,0 +1,53 @@
+package com.openwes.repository.hibernate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.persistence.metamodel.EntityType;
+import org.hibernate.SessionFactory;
+
+/**
+ * Resolve entity classes from names used in HQL: entity name, simple class
+ * name or fully qualified class name.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class EntityNames {
+
+    private final static Pattern BULK_TARGET = Pattern.compile(
+            "^\\s*(?:update|delete)\\s+(?:from\\s+)?([A-Za-z_$][A-Za-z0-9_$.]*)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final Map<String, Class<?>> entityClasses = new HashMap<>();
+
+    EntityNames(SessionFactory sessionFactory) {
+        for (EntityType<?> entity : sessionFactory.getMetamodel().getEntities()) {
+            Class<?> javaType = entity.getJavaType();
+            if (javaType == null) {
+                continue;
+            }
+            entityClasses.put(javaType.getSimpleName(), javaType);
+            entityClasses.put(entity.getName(), javaType);
+            entityClasses.put(javaType.getName(), javaType);
+        }
+    }
+
+    /**
+     * @param name
+     * @return entity class or null if name is not an entity
+     */
+    Class<?> resolve(String name) {
+        return entityClasses.get(name);
+    }
+
+    /**
+     * @param query HQL update or delete
+     * @return target entity class of query or null if it can not be resolved
+     */
+    Class<?> bulkTarget(String query) {
+        Matcher matcher = BULK_TARGET.matcher(query);
+        return matcher.find() ? entityClasses.get(matcher.group(1)) : null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.openwes.repository.hibernate;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HQL of id based queries of every mapped entity. Queries are built once at
+ * startup, registered as named queries
+ * <code>[entity name].findById</code>, <code>.findByIds</code>,
+ * <code>.deleteById</code>, <code>.deleteByIds</code>, <code>.count</code>,
+ * <code>.findAll</code> and parsed once so their plans are in the query plan
+ * cache before the first call.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class EntityQueryRegistry {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(EntityQueryRegistry.class);
+
+    static class EntityQueries {
+
+        final String findById;
+        final String findByIds;
+        final String deleteById;
+        final String deleteByIds;
+        final String count;
+        final String findAll;
+
+        EntityQueries(String entity, String id) {
+            this.findById = "SELECT r FROM " + entity + " r WHERE r." + id + " = :id";
+            this.findByIds = "SELECT r FROM " + entity + " r WHERE r." + id + " IN :ids ORDER BY r." + id + " ASC";
+            this.deleteById = "DELETE FROM " + entity + " r WHERE r." + id + " = :id";
+            this.deleteByIds = "DELETE FROM " + entity + " r WHERE r." + id + " IN :ids";
+            this.count = "SELECT COUNT(r." + id + ") FROM " + entity + " r";
+            this.findAll = "SELECT r FROM " + entity + " r ORDER BY r." + id + " ASC";
+        }
+
+        /**
+         * Queries of classes which are not registered, they have the same
+         * shape as queries built by repositories before
+         */
+        static EntityQueries of(Class<?> dto) {
+            return new EntityQueries(dto.getName(), "id");
+        }
+    }
+
+    private final Map<Class<?>, EntityQueries> queries = new HashMap<>();
+
+    EntityQueryRegistry(SessionFactory sessionFactory) {
+        try (Session session = sessionFactory.openSession()) {
+            for (EntityType<?> entity : sessionFactory.getMetamodel().getEntities()) {
+                Class<?> javaType = entity.getJavaType();
+                if (javaType == null || !entity.hasSingleIdAttribute()) {
+                    continue;
+                }
+                Type<?> idType = entity.getIdType();
+                if (idType == null) {
+                    continue;
+                }
+                SingularAttribute<?, ?> id = entity.getId(idType.getJavaType());
+                EntityQueries entityQueries = new EntityQueries(javaType.getName(), id.getName());
+                register(sessionFactory, session, entity.getName(), "findById", entityQueries.findById);
+                register(sessionFactory, session, entity.getName(), "findByIds", entityQueries.findByIds);
+                register(sessionFactory, session, entity.getName(), "deleteById", entityQueries.deleteById);
+                register(sessionFactory, session, entity.getName(), "deleteByIds", entityQueries.deleteByIds);
+                register(sessionFactory, session, entity.getName(), "count", entityQueries.count);
+                register(sessionFactory, session, entity.getName(), "findAll", entityQueries.findAll);
+                queries.put(javaType, entityQueries);
+            }
+        }
+        LOGGER.info("Registered id queries of {} entities", queries.size());
+    }
+
+    private static void register(SessionFactory sessionFactory, Session session, String entity, String name, String hql) {
+        try {
+            sessionFactory.addNamedQuery(entity + "." + name, session.createQuery(hql));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid query " + entity + "." + name + ": " + hql, e);
+        }
+    }
+
+    /**
+     * @param dto
+     * @return queries of dto. Queries are built on the fly if dto is not a
+     * mapped entity with single id attribute
+     */
+    EntityQueries of(Class<?> dto) {
+        EntityQueries result = queries.get(dto);
+        return result != null ? result : EntityQueries.of(dto);
+    }
+
+    int size() {
+        return queries.size();
+    }
+}
@@ -0,0 +1,163 @@
+package com.openwes.repository.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.PostInsertIdentifierGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+
+/**
+ * Table of an entity as it is written by native bulk statements. Columns are
+ * the identifier columns followed by the columns of insertable properties in
+ * mapping order. Values of an entity are read through its persister and bound
+ * with the Hibernate types of its properties.
+ *
+ * The identifier is not written if it is generated by the database, e.g.
+ * identity columns.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class EntityTable {
+
+    private final AbstractEntityPersister persister;
+    private final String table;
+    private final boolean writeId;
+    private final String[] idColumns;
+    private final int[] properties;
+    private final List<String> columns;
+    private final Map<String, String[]> propertyColumns = new HashMap<>();
+
+    EntityTable(SessionFactoryImplementor sessionFactory, Class<?> entityClass) {
+        EntityPersister entityPersister = sessionFactory.getMetamodel().entityPersister(entityClass);
+        if (!(entityPersister instanceof AbstractEntityPersister)) {
+            throw new RuntimeException("Entity " + entityClass.getName() + " is not mapped to a table");
+        }
+        this.persister = (AbstractEntityPersister) entityPersister;
+        if (persister.isMultiTable()) {
+            throw new RuntimeException("Entity " + entityClass.getName() + " is mapped to more than one table");
+        }
+        this.table = persister.getTableName();
+        this.writeId = !(persister.getIdentifierGenerator() instanceof PostInsertIdentifierGenerator);
+        this.idColumns = persister.getIdentifierColumnNames();
+        List<String> _columns = new ArrayList<>();
+        if (writeId) {
+            _columns.addAll(Arrays.asList(idColumns));
+        }
+        if (persister.getIdentifierPropertyName() != null) {
+            propertyColumns.put(persister.getIdentifierPropertyName(), idColumns);
+        }
+        String[] names = persister.getPropertyNames();
+        boolean[] insertability = persister.getPropertyInsertability();
+        List<Integer> _properties = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            String[] _propertyColumns = persister.getPropertyColumnNames(i);
+            if (!insertability[i] || _propertyColumns == null || _propertyColumns.length == 0) {
+                /**
+                 * Collections, formulas and read-only properties
+                 */
+                continue;
+            }
+            _properties.add(i);
+            _columns.addAll(Arrays.asList(_propertyColumns));
+            propertyColumns.put(names[i], _propertyColumns);
+        }
+        this.properties = _properties.stream().mapToInt(Integer::intValue).toArray();
+        this.columns = Collections.unmodifiableList(_columns);
+    }
+
+    /**
+     * @return true if entity is a subclass or has subclasses, rows of its
+     * table may then belong to other entities
+     */
+    boolean isPolymorphic() {
+        return persister.isInherited() || persister.hasSubclasses();
+    }
+
+    /**
+     * @return true if entity has a version property
+     */
+    boolean isVersioned() {
+        return persister.isVersioned();
+    }
+
+    String getEntityName() {
+        return persister.getEntityName();
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * @return columns which are written, in binding order
+     */
+    List<String> getColumns() {
+        return columns;
+    }
+
+    String[] getIdColumns() {
+        return idColumns;
+    }
+
+    /**
+     * @param property name of identifier or of a written property
+     * @return columns of property
+     */
+    String[] columnsOf(String property) {
+        String[] result = propertyColumns.get(property);
+        if (result == null) {
+            throw new RuntimeException("Property " + property + " of " + persister.getEntityName()
+                    + " is not a written column");
+        }
+        return result;
+    }
+
+    /**
+     * Generate identifier of entity if it is not assigned yet and it is not
+     * generated by the database.
+     *
+     * @param entity
+     * @param session
+     */
+    void assignId(Object entity, SharedSessionContractImplementor session) {
+        if (!writeId || persister.getIdentifier(entity, session) != null) {
+            return;
+        }
+        Serializable id = persister.getIdentifierGenerator().generate(session, entity);
+        persister.setIdentifier(entity, id, session);
+    }
+
+    /**
+     * Bind values of entity to statement from index
+     *
+     * @param statement
+     * @param index
+     * @param entity
+     * @param session
+     * @return index of the next parameter
+     * @throws SQLException
+     */
+    int bind(PreparedStatement statement, int index, Object entity, SharedSessionContractImplementor session) throws SQLException {
+        if (writeId) {
+            persister.getIdentifierType().nullSafeSet(statement, persister.getIdentifier(entity, session), index, session);
+            index += idColumns.length;
+        }
+        Type[] types = persister.getPropertyTypes();
+        for (int i : properties) {
+            types[i].nullSafeSet(statement, persister.getPropertyValue(entity, i), index, session);
+            index += persister.getPropertyColumnNames(i).length;
+        }
+        return index;
+    }
+}
@@ -2,21 +2,56 @@ package com.openwes.repository.hibernate;
 
 import com.github.fluent.hibernate.cfg.scanner.EntityScanner;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.openwes.core.utils.ClassUtils;
 import com.openwes.core.utils.Validate;
+import com.openwes.repository.Operation;
+import com.openwes.repository.RepositoryMetrics;
 import com.openwes.repository.RepositoryProvider;
 import com.openwes.repository.annotation.DTO;
 import com.openwes.repository.annotation.View;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigUtil;
 import com.typesafe.config.ConfigValue;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.cache.CacheManager;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.hibernate.cache.spi.DomainDataRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.Region;
+import org.hibernate.cache.spi.RegionFactory;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.query.spi.QueryPlanCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
 import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +66,40 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
     private SessionFactory sessionFactory;
     public final static int DEFAULT_BATCH_SIZE = 100;
     private int batchSize = DEFAULT_BATCH_SIZE;
+    public final static int DEFAULT_STREAM_FETCH_SIZE = 1000;
+    private int streamFetchSize = DEFAULT_STREAM_FETCH_SIZE;
+    private int streamClearSize = DEFAULT_BATCH_SIZE;
+    public final static int DEFAULT_HIKARI_POOL_SIZE = 10;
+    private int maxConnections = DEFAULT_HIKARI_POOL_SIZE;
+    public final static int DEFAULT_MULTI_ROW_SIZE = 500;
+    public final static int DEFAULT_MAX_PARAMETERS = 32767;
+    private int multiRowSize = DEFAULT_MULTI_ROW_SIZE;
+    private int maxParameters = DEFAULT_MAX_PARAMETERS;
+    private boolean readOnlyFinders = true;
+    private boolean readOnlyConnection = false;
+    public final static int DEFAULT_ID_TABLE_THRESHOLD = 10000;
+    private int idTableThreshold = DEFAULT_ID_TABLE_THRESHOLD;
+    private IdTable idTable;
+    private final AtomicInteger activeSessions = new AtomicInteger(0);
+    public final static int DEFAULT_QUERY_CACHE_SIZE = 10000;
+    public final static long DEFAULT_QUERY_CACHE_EXPIRE_MS = 60000;
+    private QueryResultCache queryCache;
+    public final static long DEFAULT_ENTITY_CACHE_SIZE = 10000;
+    public final static long DEFAULT_ENTITY_CACHE_EXPIRE_MS = 300000;
+    private EntityCache entityCache;
+    public final static int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 500;
+    public final static long DEFAULT_WRITE_BEHIND_MAX_DELAY_MS = 20;
+    public final static int DEFAULT_WRITE_BEHIND_CAPACITY = 10000;
+    public final static long DEFAULT_WRITE_BEHIND_OFFER_TIMEOUT_MS = 1000;
+    private final Map<Class<?>, WriteBehindBuffer> writeBehindBuffers = new HashMap<>();
+    public final static String DEFAULT_CACHING_PROVIDER = "org.ehcache.jsr107.EhcacheCachingProvider";
+    public final static String DEFAULT_CACHE_USAGE = "read-write";
+    private boolean secondLevelCacheEnabled = false;
+    private EntityQueryRegistry entityQueries;
+    private int queryPlanCacheMaxSize = QueryPlanCache.DEFAULT_QUERY_PLAN_MAX_COUNT;
+    private int queryPlanParameterMetadataMaxSize = QueryPlanCache.DEFAULT_PARAMETER_METADATA_MAX_COUNT;
+    private final Map<Class<?>, EntityTable> entityTables = new ConcurrentHashMap<>();
+    private Cache<List<Object>, Projection<?>> projections;
 
     @Override
     public void onStart(Config config) throws Exception {
@@ -38,6 +107,59 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
             return;
         }
 
+        /**
+         * Streaming query settings. MySQL Connector/J only streams rows when
+         * fetch size is Integer.MIN_VALUE
+         */
+        if (config.hasPath("stream-fetch-size")) {
+            streamFetchSize = config.getInt("stream-fetch-size");
+        }
+        if (config.hasPath("stream-clear-size")) {
+            streamClearSize = config.getInt("stream-clear-size");
+        }
+        if (streamFetchSize == 0) {
+            throw new RuntimeException("stream-fetch-size must not be zero");
+        }
+
+        /**
+         * Native multi-row statements. A statement carries up to
+         * multi-row.rows-per-statement rows and never more bind parameters
+         * than multi-row.max-parameters (32767 for PostgreSQL, 2100 for SQL
+         * Server)
+         */
+        if (config.hasPath("multi-row.rows-per-statement")) {
+            multiRowSize = config.getInt("multi-row.rows-per-statement");
+        }
+        if (config.hasPath("multi-row.max-parameters")) {
+            maxParameters = config.getInt("multi-row.max-parameters");
+        }
+        if (multiRowSize <= 0 || maxParameters <= 0) {
+            throw new RuntimeException("multi-row.rows-per-statement and multi-row.max-parameters must be larger than zero");
+        }
+
+        /**
+         * Finders outside of a transaction run on read-only sessions.
+         * read-only-connection also marks their JDBC connection read-only,
+         * it costs a round trip with some drivers
+         */
+        if (config.hasPath("read-only-finders")) {
+            readOnlyFinders = config.getBoolean("read-only-finders");
+        }
+        if (config.hasPath("read-only-connection")) {
+            readOnlyConnection = config.getBoolean("read-only-connection");
+        }
+
+        /**
+         * Id collections larger than id-table.threshold are joined through a
+         * temporary id table instead of IN lists, zero disables it
+         */
+        if (config.hasPath("id-table.threshold")) {
+            idTableThreshold = config.getInt("id-table.threshold");
+        }
+        if (idTableThreshold < 0) {
+            throw new RuntimeException("id-table.threshold must not be negative");
+        }
+
         final Configuration configuration = new Configuration();
         /**
          * Set default value
@@ -51,6 +173,31 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
         configuration.setProperty(Environment.IMPLICIT_NAMING_STRATEGY, "org.hibernate.boot.model.naming.ImplicitNamingStrategyJpaCompliantImpl");
         configuration.configure();
 
+        /**
+         * Second level cache over JCache. Entity regions are applied by
+         * CacheRegionInitializer
+         */
+        if (config.hasPath("second-level-cache")) {
+            configureSecondLevelCache(configuration, config.getConfig("second-level-cache"));
+        }
+
+        if (config.hasPath("query-plan-cache.max-size")) {
+            configuration.setProperty(Environment.QUERY_PLAN_CACHE_MAX_SIZE,
+                    config.getInt("query-plan-cache.max-size") + "");
+        }
+        if (config.hasPath("query-plan-cache.parameter-metadata-max-size")) {
+            configuration.setProperty(Environment.QUERY_PLAN_CACHE_PARAMETER_METADATA_MAX_SIZE,
+                    config.getInt("query-plan-cache.parameter-metadata-max-size") + "");
+        }
+
+        /**
+         * Pad IN-list parameters of HQL and native queries to power of two
+         * sizes, see in-clause-padding of {@link RepositoryProvider}
+         */
+        if (isInClausePadding()) {
+            configuration.setProperty(Environment.IN_CLAUSE_PARAMETER_PADDING, "true");
+        }
+
         /**
          * override Hibernate configuration from application configuration
          */
@@ -76,6 +223,20 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
             throw new RuntimeException("Missing configuration for HikariCP...");
         }
 
+        String maxPoolSizeStr = configuration.getProperty("hibernate.hikari.maximumPoolSize");
+        if (!Validate.isEmpty(maxPoolSizeStr)) {
+            maxConnections = Integer.valueOf(maxPoolSizeStr);
+        }
+
+        String planCacheSizeStr = configuration.getProperty(Environment.QUERY_PLAN_CACHE_MAX_SIZE);
+        if (!Validate.isEmpty(planCacheSizeStr)) {
+            queryPlanCacheMaxSize = Integer.valueOf(planCacheSizeStr);
+        }
+        String parameterMetadataSizeStr = configuration.getProperty(Environment.QUERY_PLAN_CACHE_PARAMETER_METADATA_MAX_SIZE);
+        if (!Validate.isEmpty(parameterMetadataSizeStr)) {
+            queryPlanParameterMetadataMaxSize = Integer.valueOf(parameterMetadataSizeStr);
+        }
+
         String batchSizeStr = configuration.getProperty(Environment.STATEMENT_BATCH_SIZE);
         if (Validate.isEmpty(batchSizeStr)) {
             batchSize = Integer.valueOf(batchSizeStr);
@@ -122,10 +283,376 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
         }
         configuration.setProperty("hibernate.hbm2ddl.schema_filter_provider", IgnoreDTOFilterProvider.class.getName());
         sessionFactory = configuration.buildSessionFactory();
+        if (secondLevelCacheEnabled) {
+            enableCacheStatistics();
+        }
+        if ((config.hasPath("query-plan-cache.statistics") && config.getBoolean("query-plan-cache.statistics"))
+                || (config.hasPath("metrics.hibernate-statistics") && config.getBoolean("metrics.hibernate-statistics"))) {
+            sessionFactory.getStatistics().setStatisticsEnabled(true);
+        }
+
+        /**
+         * Named id queries of mapped entities, they are validated here
+         */
+        entityQueries = new EntityQueryRegistry(sessionFactory);
+
+        /**
+         * Constructor projections, bounded like the query plan cache
+         */
+        projections = CacheBuilder.newBuilder()
+                .maximumSize(queryPlanCacheMaxSize)
+                .build();
+
+        /**
+         * Result cache for finder methods which are called with cached()
+         */
+        if (config.hasPath("query-cache")) {
+            Config queryCacheConfig = config.getConfig("query-cache");
+            long maxSize = queryCacheConfig.hasPath("max-size")
+                    ? queryCacheConfig.getLong("max-size") : DEFAULT_QUERY_CACHE_SIZE;
+            long expireAfterWrite = queryCacheConfig.hasPath("expire-after-write")
+                    ? queryCacheConfig.getDuration("expire-after-write", TimeUnit.MILLISECONDS)
+                    : DEFAULT_QUERY_CACHE_EXPIRE_MS;
+            if (maxSize <= 0 || expireAfterWrite <= 0) {
+                throw new RuntimeException("query-cache.max-size and query-cache.expire-after-write must be larger than zero");
+            }
+            queryCache = new QueryResultCache(sessionFactory, maxSize, expireAfterWrite);
+            LOGGER.info("Enable query cache with max size {} and expire after write {} ms", maxSize, expireAfterWrite);
+        }
+
+        /**
+         * Near cache of entities by id for findById/findByIds
+         */
+        if (config.hasPath("entity-cache.classes")) {
+            Config entityCacheConfig = config.getConfig("entity-cache");
+            Config classesConfig = entityCacheConfig.getConfig("classes");
+            entityCache = new EntityCache(sessionFactory);
+            for (String className : classesConfig.root().keySet()) {
+                Config classConfig = classesConfig.getConfig(ConfigUtil.joinPath(className))
+                        .withFallback(entityCacheConfig.withoutPath("classes"));
+                long maxEntries = classConfig.hasPath("max-entries")
+                        ? classConfig.getLong("max-entries") : DEFAULT_ENTITY_CACHE_SIZE;
+                long expireAfterWrite = classConfig.hasPath("expire-after-write")
+                        ? classConfig.getDuration("expire-after-write", TimeUnit.MILLISECONDS)
+                        : DEFAULT_ENTITY_CACHE_EXPIRE_MS;
+                if (maxEntries <= 0 || expireAfterWrite <= 0) {
+                    throw new RuntimeException("entity-cache.max-entries and entity-cache.expire-after-write must be larger than zero");
+                }
+                entityCache.register(ClassUtils.load(className), maxEntries, expireAfterWrite);
+                LOGGER.info("Enable entity cache for {} with max entries {} and expire after write {} ms",
+                        className, maxEntries, expireAfterWrite);
+            }
+        }
+
+        /**
+         * Write-behind buffers which group single entity writes into batched
+         * transactions
+         */
+        if (config.hasPath("write-behind.classes")) {
+            Config writeBehindConfig = config.getConfig("write-behind");
+            Config classesConfig = writeBehindConfig.getConfig("classes");
+            for (String className : classesConfig.root().keySet()) {
+                Config classConfig = classesConfig.getConfig(ConfigUtil.joinPath(className))
+                        .withFallback(writeBehindConfig.withoutPath("classes"));
+                int maxBatchSize = classConfig.hasPath("max-batch-size")
+                        ? classConfig.getInt("max-batch-size") : DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+                long maxDelay = classConfig.hasPath("max-delay")
+                        ? classConfig.getDuration("max-delay", TimeUnit.MILLISECONDS)
+                        : DEFAULT_WRITE_BEHIND_MAX_DELAY_MS;
+                int capacity = classConfig.hasPath("capacity")
+                        ? classConfig.getInt("capacity") : DEFAULT_WRITE_BEHIND_CAPACITY;
+                long offerTimeout = classConfig.hasPath("offer-timeout")
+                        ? classConfig.getDuration("offer-timeout", TimeUnit.MILLISECONDS)
+                        : DEFAULT_WRITE_BEHIND_OFFER_TIMEOUT_MS;
+                if (maxBatchSize <= 0 || maxDelay < 0 || capacity <= 0 || offerTimeout < 0) {
+                    throw new RuntimeException("write-behind.max-batch-size and write-behind.capacity must be larger than zero, "
+                            + "write-behind.max-delay and write-behind.offer-timeout must not be negative");
+                }
+                Class<?> entityClass = ClassUtils.load(className);
+                writeBehindBuffers.put(entityClass, new WriteBehindBuffer(this, entityClass, maxBatchSize, maxDelay,
+                        capacity, offerTimeout));
+                LOGGER.info("Enable write-behind for {} with max batch size {}, max delay {} ms and capacity {}",
+                        className, maxBatchSize, maxDelay, capacity);
+            }
+        }
+
+        if (idTableThreshold > 0) {
+            idTable = IdTable.of(getDialect());
+            if (idTable == null) {
+                LOGGER.info("Dialect {} has no local temporary tables, id collections are always queried with IN lists",
+                        getDialect().getClass().getName());
+            }
+        }
+    }
+
+    private void configureSecondLevelCache(Configuration configuration, Config cacheConfig) {
+        String provider = cacheConfig.hasPath("provider")
+                ? cacheConfig.getString("provider") : DEFAULT_CACHING_PROVIDER;
+        String prefix = cacheConfig.hasPath("region-prefix")
+                ? cacheConfig.getString("region-prefix") : getDataSourceName();
+        boolean queryCacheEnabled = cacheConfig.hasPath("query-cache")
+                && cacheConfig.getBoolean("query-cache");
+        String defaultUsage = cacheConfig.hasPath("default-usage")
+                ? cacheConfig.getString("default-usage") : DEFAULT_CACHE_USAGE;
+
+        configuration.setProperty(Environment.USE_SECOND_LEVEL_CACHE, "true");
+        configuration.setProperty(Environment.CACHE_REGION_FACTORY, "jcache");
+        configuration.setProperty("hibernate.javax.cache.provider", provider);
+        configuration.setProperty("hibernate.javax.cache.missing_cache_strategy", "create");
+        if (cacheConfig.hasPath("uri")) {
+            configuration.setProperty("hibernate.javax.cache.uri", cacheConfig.getString("uri"));
+        }
+        if (!Validate.isEmpty(prefix)) {
+            /**
+             * data sources share the default cache manager of the provider
+             */
+            configuration.setProperty(Environment.CACHE_REGION_PREFIX, prefix);
+        }
+        configuration.setProperty(Environment.USE_QUERY_CACHE, String.valueOf(queryCacheEnabled));
+        configuration.setProperty(Environment.GENERATE_STATISTICS, "true");
+        configuration.setProperty(Environment.LOG_SESSION_METRICS, "false");
+
+        if (cacheConfig.hasPath("regions")) {
+            Config regionsConfig = cacheConfig.getConfig("regions");
+            for (String className : regionsConfig.root().keySet()) {
+                Config regionConfig = regionsConfig.getConfig(ConfigUtil.joinPath(className));
+                String usage = regionConfig.hasPath("usage")
+                        ? regionConfig.getString("usage") : defaultUsage;
+                String region = regionConfig.hasPath("region")
+                        ? regionConfig.getString("region") : className;
+                configuration.setProperty(CacheRegionInitializer.CLASS_CACHE_PREFIX + className, usage + "," + region);
+                LOGGER.info("Enable second level cache for {} with usage {} in region {}", className, usage, region);
+            }
+        }
+        secondLevelCacheEnabled = true;
+        LOGGER.info("Enable second level cache with provider {} and query cache {}", provider, queryCacheEnabled);
+    }
+
+    /**
+     * JCache statistics are disabled by default, they are needed for eviction
+     * counts of regions
+     */
+    private void enableCacheStatistics() {
+        CacheManager cacheManager = cacheManager();
+        if (cacheManager == null) {
+            return;
+        }
+        for (String cacheName : cacheManager.getCacheNames()) {
+            try {
+                cacheManager.enableStatistics(cacheName, true);
+            } catch (Exception e) {
+                LOGGER.warn("Can not enable statistics of cache {}", cacheName, e);
+            }
+        }
+    }
+
+    private CacheManager cacheManager() {
+        RegionFactory regionFactory = ((SessionFactoryImplementor) sessionFactory).getCache().getRegionFactory();
+        if (regionFactory instanceof JCacheRegionFactory) {
+            return ((JCacheRegionFactory) regionFactory).getCacheManager();
+        }
+        return null;
+    }
+
+    final EntityQueryRegistry getEntityQueries() {
+        return entityQueries;
+    }
+
+    /**
+     * @param entityClass
+     * @return table mapping of entity class used by native bulk statements,
+     * it is built on first use
+     */
+    final EntityTable entityTable(Class<?> entityClass) {
+        return entityTables.computeIfAbsent(entityClass,
+                c -> new EntityTable((SessionFactoryImplementor) sessionFactory, c));
+    }
+
+    /**
+     * @param query
+     * @param target
+     * @return constructor projection of rows of query to target, it is
+     * resolved on first use
+     */
+    final <E> Projection<E> projection(String query, Class<E> target) {
+        List<Object> key = Arrays.asList(query, target);
+        Projection<?> projection = projections.getIfPresent(key);
+        if (projection == null) {
+            projection = Projection.constructor(target);
+            Projection<?> previous = projections.asMap().putIfAbsent(key, projection);
+            if (previous != null) {
+                projection = previous;
+            }
+        }
+        return (Projection<E>) projection;
+    }
+
+    /**
+     * @return temporary id table of the dialect or null if it is disabled or
+     * not supported
+     */
+    final IdTable getIdTable() {
+        return idTable;
+    }
+
+    final Dialect getDialect() {
+        return ((SessionFactoryImplementor) sessionFactory).getJdbcServices().getDialect();
+    }
+
+    /**
+     * @return size and hit/miss counts of the Hibernate query plan cache. Hit
+     * and miss counts and distinct query count are zero unless
+     * query-plan-cache.statistics or hibernate.generate_statistics is enabled
+     */
+    public QueryPlanCacheStats getQueryPlanCacheStats() {
+        Statistics statistics = sessionFactory.getStatistics();
+        return new QueryPlanCacheStats(queryPlanCacheMaxSize, queryPlanParameterMetadataMaxSize,
+                statistics.isStatisticsEnabled(),
+                statistics.getQueryPlanCacheHitCount(),
+                statistics.getQueryPlanCacheMissCount(),
+                entityQueries == null ? 0 : entityQueries.size(),
+                isInClausePadding(),
+                statistics.getQueries().length);
+    }
+
+    /**
+     * @return counters of Hibernate statistics: flushes, entity loads,
+     * statements, queries...
+     */
+    public HibernateStats getHibernateStats() {
+        return new HibernateStats(sessionFactory.getStatistics());
+    }
+
+    /**
+     * @return true if second-level-cache is configured for this data source
+     */
+    public boolean isSecondLevelCacheEnabled() {
+        return secondLevelCacheEnabled;
+    }
+
+    /**
+     * Evict entity classes, collections stored in their tables and all query
+     * results from the second level cache. Writes which bypass the Session,
+     * e.g. StatelessSession or JDBC work, leave them stale otherwise.
+     *
+     * @param entityClasses
+     */
+    final void evictSecondLevelCache(Collection<Class<?>> entityClasses) {
+        if (!secondLevelCacheEnabled) {
+            return;
+        }
+        SessionFactoryImplementor factory = (SessionFactoryImplementor) sessionFactory;
+        CacheImplementor cache = factory.getCache();
+        Set<Serializable> spaces = new HashSet<>();
+        for (Class<?> entityClass : entityClasses) {
+            cache.evictEntityData(entityClass);
+            spaces.addAll(Arrays.asList(factory.getMetamodel().entityPersister(entityClass).getQuerySpaces()));
+        }
+        for (CollectionPersister persister : factory.getMetamodel().collectionPersisters().values()) {
+            if (persister.hasCache() && !Collections.disjoint(spaces, Arrays.asList(persister.getCollectionSpaces()))) {
+                cache.evictCollectionData(persister.getRole());
+            }
+        }
+        cache.evictQueryRegions();
+    }
+
+    /**
+     * Evict all regions of the second level cache, after writes whose tables
+     * are unknown
+     */
+    final void evictSecondLevelCache() {
+        if (secondLevelCacheEnabled) {
+            ((SessionFactoryImplementor) sessionFactory).getCache().evictAllRegions();
+        }
+    }
+
+    /**
+     * @return hit/miss/put/eviction counts of second level cache regions.
+     * Empty if second-level-cache is not enabled
+     */
+    public List<CacheRegionStats> getCacheRegionStats() {
+        List<CacheRegionStats> result = new ArrayList<>();
+        if (!secondLevelCacheEnabled) {
+            return result;
+        }
+        CacheImplementor cache = ((SessionFactoryImplementor) sessionFactory).getCache();
+        Statistics statistics = sessionFactory.getStatistics();
+        CacheManager cacheManager = cacheManager();
+        for (String regionName : cache.getCacheRegionNames()) {
+            Region region = cache.getRegion(regionName);
+            CacheRegionStats.Type type;
+            if (region instanceof DomainDataRegion) {
+                type = CacheRegionStats.Type.DOMAIN_DATA;
+            } else if (region instanceof QueryResultsRegion) {
+                type = CacheRegionStats.Type.QUERY_RESULTS;
+            } else {
+                continue;
+            }
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(regionName);
+            if (regionStatistics == null) {
+                continue;
+            }
+            result.add(new CacheRegionStats(regionName, type,
+                    regionStatistics.getHitCount(),
+                    regionStatistics.getMissCount(),
+                    regionStatistics.getPutCount(),
+                    evictionCount(cacheManager, cache.getRegionFactory().qualify(regionName)),
+                    regionStatistics.getElementCountInMemory(),
+                    regionStatistics.getSizeInMemory()));
+        }
+        return result;
+    }
+
+    /**
+     * Read CacheEvictions from the JCache statistics MBean of a cache. It is
+     * registered as javax.cache:type=CacheStatistics,CacheManager=..,Cache=..
+     * Statistics of caches which are created after startup (query regions)
+     * are enabled on the first call.
+     */
+    private long evictionCount(CacheManager cacheManager, String cacheName) {
+        if (cacheManager == null) {
+            return -1;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("javax.cache:type=CacheStatistics"
+                    + ",CacheManager=" + mbeanSafe(cacheManager.getURI().toString())
+                    + ",Cache=" + mbeanSafe(cacheName));
+            if (!server.isRegistered(name)) {
+                cacheManager.enableStatistics(cacheName, true);
+                if (!server.isRegistered(name)) {
+                    return -1;
+                }
+            }
+            return ((Number) server.getAttribute(name, "CacheEvictions")).longValue();
+        } catch (Exception e) {
+            LOGGER.debug("Can not read eviction count of cache {}", cacheName, e);
+            return -1;
+        }
+    }
+
+    private static String mbeanSafe(String value) {
+        return value == null ? "" : value.replaceAll(",|:|=|\n", ".");
     }
 
     @Override
     public void onStop(Config config) throws Exception {
+        for (WriteBehindBuffer buffer : writeBehindBuffers.values()) {
+            buffer.stop(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * @param entityClass
+     * @return write-behind buffer of entity class or null if it is not
+     * configured
+     */
+    public WriteBehindBuffer getWriteBehindBuffer(Class<?> entityClass) {
+        return writeBehindBuffers.get(entityClass);
+    }
+
+    public List<WriteBehindBuffer> getWriteBehindBuffers() {
+        return new ArrayList<>(writeBehindBuffers.values());
     }
 
     public SessionFactory getSessionFactory() {
@@ -136,6 +663,94 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
         return batchSize;
     }
 
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return query result cache or null if it is not enabled
+     */
+    public QueryResultCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * @return entity near cache or null if it is not enabled
+     */
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * @return provider which serves finder methods called outside of an
+     * explicit transaction
+     */
+    public HibernateProvider readProvider() {
+        return this;
+    }
+
+    /**
+     * @return number of sessions opened by repositories which are not closed
+     * yet. Sessions of explicit transactions are not counted.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    final void sessionOpened() {
+        activeSessions.incrementAndGet();
+    }
+
+    final void sessionClosed() {
+        activeSessions.decrementAndGet();
+    }
+
+    public int getStreamFetchSize() {
+        return streamFetchSize;
+    }
+
+    public int getStreamClearSize() {
+        return streamClearSize;
+    }
+
+    public int getMultiRowSize() {
+        return multiRowSize;
+    }
+
+    public int getMaxParameters() {
+        return maxParameters;
+    }
+
+    public boolean isReadOnlyFinders() {
+        return readOnlyFinders;
+    }
+
+    public boolean isReadOnlyConnection() {
+        return readOnlyConnection;
+    }
+
+    public int getIdTableThreshold() {
+        return idTableThreshold;
+    }
+
+    /**
+     * @return a plain JDBC connection of the connection pool of this data
+     * source, it must be released by {@link #closeConnection(Connection)}
+     * @throws SQLException
+     */
+    final Connection openConnection() throws SQLException {
+        return connectionProvider().getConnection();
+    }
+
+    final void closeConnection(Connection connection) throws SQLException {
+        connectionProvider().closeConnection(connection);
+    }
+
+    private ConnectionProvider connectionProvider() {
+        return ((SessionFactoryImplementor) sessionFactory).getServiceRegistry().getService(ConnectionProvider.class);
+    }
+
     @Override
     public void beginTransaction() {
         /**
@@ -160,6 +775,7 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
                     LOGGER.info("Commit old transaction {} with status = {}", _tx.getTxId(), status);
                     oldSession.flush();
                     oldSession.getTransaction().commit();
+                    runAfterCommit(_tx);
                     removeCurrentTransaction();
                 }
             }
@@ -185,14 +801,21 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
         }
         TransactionStatus status = session.getTransaction() == null
                 ? null : session.getTransaction().getStatus();
+        RepositoryMetrics metrics = getMetrics();
+        long start = metrics.start(Operation.COMMIT);
+        boolean failed = true;
         try {
             LOGGER.info("Commit transaction {} with status = {}", _tx.getTxId(), status);
             if (status != null && status == TransactionStatus.ACTIVE) {
                 session.getTransaction().commit();
             }
+            failed = false;
+            runAfterCommit(_tx);
         } catch (Exception e) {
             LOGGER.error("Commit transaction {} with status {} get error", _tx.getTxId(), status);
             rollbackTransaction();
+        } finally {
+            metrics.stop(Operation.COMMIT, start, -1, failed);
         }
     }
 
@@ -208,10 +831,20 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
             LOGGER.warn("Can not find Session associated to task {}", _tx.getTxId());
             return;
         }
+        /**
+         * Nothing was written, caches are kept
+         */
+        _tx.drainAfterCommit();
+        RepositoryMetrics metrics = getMetrics();
+        long start = metrics.start(Operation.ROLLBACK);
+        boolean failed = true;
         try {
             session.getTransaction().rollback();
+            failed = false;
         } catch (Exception ex) {
             LOGGER.error("Rollback transaction {} get error", _tx.getTxId(), ex);
+        } finally {
+            metrics.stop(Operation.ROLLBACK, start, -1, failed);
         }
     }
 
@@ -228,7 +861,22 @@ public class HibernateProvider extends RepositoryProvider<HibernateTransaction>
         } else {
             session.close();
         }
+        _tx.drainAfterCommit();
         removeCurrentTransaction();
     }
 
+    /**
+     * Run actions which writes of a committed transaction registered, e.g.
+     * invalidation of cached results of the written classes
+     */
+    private void runAfterCommit(HibernateTransaction tx) {
+        for (Runnable action : tx.drainAfterCommit()) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Run after commit action of transaction {} get error", tx.getTxId(), e);
+            }
+        }
+    }
+
 }
@@ -1,21 +1,47 @@
 package com.openwes.repository.hibernate;
 
 import com.google.common.collect.ImmutableMap;
-import com.openwes.core.utils.ClockService;
-import com.openwes.core.utils.ClockWatch;
+import com.google.common.collect.Lists;
 import com.openwes.core.utils.Validate;
 import com.openwes.repository.FindMany;
+import com.openwes.repository.LongIds;
+import com.openwes.repository.MergeMode;
+import com.openwes.repository.Operation;
+import com.openwes.repository.PartitionedWriteReport;
 import com.openwes.repository.QuerySpliterator;
 import com.openwes.repository.Repository;
+import com.openwes.repository.RepositoryMetrics;
 import com.openwes.repository.RepositoryProvider;
+import com.openwes.repository.SlowQueryTracker;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hibernate.jdbc.Work;
+import org.hibernate.proxy.HibernateProxyHelper;
 import org.hibernate.query.NativeQuery;
 import org.hibernate.query.Query;
 import org.hibernate.resource.transaction.spi.TransactionStatus;
@@ -30,70 +56,246 @@ import org.slf4j.LoggerFactory;
 public abstract class HibernateRepository extends Repository {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(HibernateRepository.class);
-    private final SessionFactory sessionFactory = findSessionFactory();
+    private final HibernateProvider hibernateProvider = bindProvider();
+    private final SessionFactory sessionFactory = hibernateProvider.getSessionFactory();
 
-    private final ThreadLocal<Integer> limit = ThreadLocal.withInitial(() -> -1);
+    /**
+     * Options of the next query of a thread. The holder is reset after use
+     * instead of being removed so the thread local entry is allocated once
+     * per thread.
+     */
+    private final static class QueryOptions {
+
+        private int limit = -1;
+        private boolean cached = false;
+        private String cacheRegion;
+
+        private void clear() {
+            limit = -1;
+            cached = false;
+            cacheRegion = null;
+        }
+    }
+
+    /**
+     * Result of a finder, count or update query
+     */
+    private enum Fetch {
+        LIST(false), FIRST(false), COUNT(false), UPDATE(false),
+        NATIVE_LIST(true), NATIVE_FIRST(true), NATIVE_COUNT(true), NATIVE_UPDATE(true);
+
+        private final boolean nativeQuery;
+
+        Fetch(boolean nativeQuery) {
+            this.nativeQuery = nativeQuery;
+        }
+    }
+
+    /**
+     * Call of {@link #execute(Call, HibernateCommandWithReturn)}: provider
+     * whose session runs the command, operation recorded in metrics and query
+     * recorded by the slow query tracker
+     */
+    private final static class Call {
+
+        private final HibernateProvider provider;
+        private final boolean readOnly;
+        private final Operation operation;
+        private String query;
+        private Map<String, Object> params;
+        private int rows = -1;
+
+        private Call(HibernateProvider provider, boolean readOnly, Operation operation) {
+            this.provider = provider;
+            this.readOnly = readOnly;
+            this.operation = operation;
+        }
+
+        private Call query(String query, Map<String, Object> params) {
+            this.query = query;
+            this.params = params;
+            return this;
+        }
+
+        /**
+         * Number of rows written by the command, rows are counted from its
+         * result if it is not set
+         */
+        private Call rows(int rows) {
+            this.rows = rows;
+            return this;
+        }
+    }
+
+    private final ThreadLocal<QueryOptions> options = ThreadLocal.withInitial(QueryOptions::new);
 
     public <T extends HibernateRepository> T limit(int value) {
-        limit.set(value);
+        options.get().limit = value;
+        return (T) this;
+    }
+
+    /**
+     * Serve the next finder call of this thread from the query result cache
+     * of the data source. It has no effect if query-cache is not enabled or
+     * if there is an explicit transaction associated to this thread.
+     *
+     * @param <T>
+     * @return
+     */
+    public <T extends HibernateRepository> T cached() {
+        options.get().cached = true;
+        return (T) this;
+    }
+
+    /**
+     * Mark the next query of this thread as cacheable in the Hibernate query
+     * cache. It has no effect if second-level-cache.query-cache is not
+     * enabled.
+     *
+     * @param <T>
+     * @return
+     */
+    public <T extends HibernateRepository> T cacheable() {
+        return cacheable("");
+    }
+
+    /**
+     * Mark the next query of this thread as cacheable in the given query
+     * cache region.
+     *
+     * @param <T>
+     * @param region
+     * @return
+     */
+    public <T extends HibernateRepository> T cacheable(String region) {
+        options.get().cacheRegion = region == null ? "" : region;
         return (T) this;
     }
 
     protected final int limit() {
-        return limit.get();
+        return options.get().limit;
     }
 
     protected final void clearLimit() {
-        limit.remove();
+        options.get().limit = -1;
+    }
+
+    /**
+     * Run supplier on the async executor of this data source. The limit,
+     * cached and cacheable flags of the current thread are carried with the
+     * supplier. The supplier runs outside of any explicit transaction of the
+     * calling thread.
+     *
+     * @param <E>
+     * @param supplier
+     * @return
+     */
+    protected final <E extends Object> CompletableFuture<E> async(Supplier<E> supplier) {
+        final QueryOptions _options = options.get();
+        final int value = _options.limit;
+        final boolean useCache = _options.cached;
+        final String region = _options.cacheRegion;
+        _options.clear();
+        CompletableFuture<E> future = hibernateProvider.supplyAsync(() -> {
+            QueryOptions target = options.get();
+            target.limit = value;
+            target.cached = useCache;
+            target.cacheRegion = region;
+            try {
+                return supplier.get();
+            } finally {
+                clearQueryOptions();
+            }
+        });
+        return future;
     }
 
     protected final int getJdbcBatchSize() {
-        RepositoryProvider provider = findProvider();
-        if (provider instanceof HibernateProvider) {
-            return ((HibernateProvider) provider).getBatchSize();
-        }
-        throw new RuntimeException("DataAccessProvider for " + dataSource() + " is not HibernateProvider");
+        return hibernateProvider.getBatchSize();
+    }
+
+    protected final int getStreamFetchSize() {
+        return hibernateProvider.getStreamFetchSize();
+    }
+
+    protected final int getStreamClearSize() {
+        return hibernateProvider.getStreamClearSize();
     }
 
     protected final SessionFactory findSessionFactory() {
+        return sessionFactory;
+    }
+
+    /**
+     * Resolve provider of the data source once, it is bound to this
+     * repository for its lifetime
+     */
+    private HibernateProvider bindProvider() {
         RepositoryProvider provider = findProvider();
         if (provider instanceof HibernateProvider) {
-            return ((HibernateProvider) provider).getSessionFactory();
+            return (HibernateProvider) provider;
         }
         throw new RuntimeException("DataAccessProvider for " + dataSource() + " is not HibernateProvider");
     }
 
+    /**
+     * @return provider which serves finder methods. It is a replica if the
+     * data source is replicated and there is no transaction associated to
+     * this thread, otherwise it is the primary.
+     */
+    protected final HibernateProvider findReadProvider() {
+        return hibernateProvider.readProvider();
+    }
+
     protected final Session getSession() {
         return openTransaction();
     }
 
     protected final Session openTransaction() {
-        RepositoryProvider provider = findProvider();
-        if (provider instanceof HibernateProvider) {
+        return openTransaction(hibernateProvider, false);
+    }
+
+    /**
+     * Finder methods which run outside of a transaction use read-only
+     * sessions: loaded entities have no snapshot for dirty checking and the
+     * session is never flushed. Override it to switch a repository back to
+     * read-write sessions, the default is read-only-finders of the data
+     * source.
+     *
+     * @return
+     */
+    protected boolean isReadOnlyFinders() {
+        return hibernateProvider.isReadOnlyFinders();
+    }
+
+    private Session openTransaction(HibernateProvider provider, boolean readOnly) {
+        /**
+         * It is local transaction so we use thread name as transaction id;
+         */
+        HibernateTransaction _tx = provider.currentTransaction();
+        if (_tx != null) {
+            return _tx.getSession();
+        }
+        Session session = provider.getSessionFactory().openSession();
+        if (readOnly) {
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+        }
+        session.beginTransaction();
+        if (readOnly && provider.isReadOnlyConnection()) {
             /**
-             * It is local transaction so we use thread name as transaction id;
+             * Before any statement of the transaction, the pool restores the
+             * flag when the connection is returned
              */
-            HibernateTransaction _tx = ((HibernateProvider) provider).currentTransaction();
-            if (_tx != null) {
-                return _tx.getSession();
-            }
-            Session session = sessionFactory.openSession();
-            session.beginTransaction();
-            ((HibernateProvider) provider).saveCurrentTransaction(new HibernateTransaction(session, true));
-            return session;
+            session.doWork(connection -> connection.setReadOnly(true));
         }
-        throw new RuntimeException("DataAccessProvider for " + dataSource() + " is not HibernateProvider");
+        provider.saveCurrentTransaction(new HibernateTransaction(session, true));
+        provider.sessionOpened();
+        return session;
     }
 
     protected final boolean isInTransaction() {
-        RepositoryProvider provider = findProvider();
-        if (provider instanceof HibernateProvider) {
-            HibernateTransaction _tx = ((HibernateProvider) provider).currentTransaction();
-            if (_tx != null) {
-                return true;
-            }
-        }
-        return false;
+        return hibernateProvider.currentTransaction() != null;
     }
 
     protected final void rollbackTransaction(Session session, Exception e) {
@@ -101,90 +303,557 @@ public abstract class HibernateRepository extends Repository {
         if (session.getTransaction().isActive()
                 && session.getTransaction().getStatus() != TransactionStatus.ROLLED_BACK
                 && session.getTransaction().getStatus() != TransactionStatus.ROLLING_BACK) {
+            RepositoryMetrics metrics = hibernateProvider.getMetrics();
+            long start = metrics.start(Operation.ROLLBACK);
+            boolean failed = true;
             try {
                 session.getTransaction().rollback();
+                failed = false;
             } catch (Exception ex) {
                 LOGGER.error("Rollback transaction get error", ex);
+            } finally {
+                metrics.stop(Operation.ROLLBACK, start, -1, failed);
             }
         }
     }
 
     protected final void commitTransaction() {
-        RepositoryProvider provider = findProvider();
-        if (provider instanceof HibernateProvider) {
-            HibernateTransaction _tx = ((HibernateProvider) provider).currentTransaction();
-            if (_tx != null && _tx.isAutoCommit()) {
-                Session session = _tx.getSession();
-                if (session != null) {
-                    TransactionStatus status = session.getTransaction() != null
-                            ? session.getTransaction().getStatus() : null;
-                    try {
+        commitTransaction(hibernateProvider);
+    }
+
+    private void commitTransaction(HibernateProvider provider) {
+        HibernateTransaction _tx = provider.currentTransaction();
+        if (_tx != null && _tx.isAutoCommit()) {
+            Session session = _tx.getSession();
+            if (session != null) {
+                TransactionStatus status = session.getTransaction() != null
+                        ? session.getTransaction().getStatus() : null;
+                try {
+                    if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug("Commit transation {} with status = {}", _tx.getTxId(), status);
-                        if (status != null && status == TransactionStatus.ACTIVE) {
-                            session.getTransaction().commit();
-                        }
-                    } catch (Exception e) {
-                        LOGGER.error("Commit transtion {} with status {} get error", _tx.getTxId(), status);
-                        throw e;
                     }
+                    if (status != null && status == TransactionStatus.ACTIVE) {
+                        commit(hibernateProvider.getMetrics(), session.getTransaction());
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("Commit transtion {} with status {} get error", _tx.getTxId(), status);
+                    throw e;
                 }
             }
-            return;
         }
-        throw new RuntimeException("DataAccessProvider for " + dataSource() + " is not HibernateProvider");
+    }
+
+    private static void commit(RepositoryMetrics metrics, Transaction transaction) {
+        long start = metrics.start(Operation.COMMIT);
+        boolean failed = true;
+        try {
+            transaction.commit();
+            failed = false;
+        } finally {
+            metrics.stop(Operation.COMMIT, start, -1, failed);
+        }
     }
 
     protected final void closeSessionIfNeed() {
-        RepositoryProvider provider = findProvider();
-        if (provider instanceof HibernateProvider) {
-            HibernateTransaction _tx = ((HibernateProvider) provider).currentTransaction();
-            if (_tx != null && _tx.isAutoCommit()) {
-                Session session = _tx.getSession();
-                if (session != null) {
-                    session.close();
-                }
-                /**
-                 * Remove from this thread
-                 */
-                ((HibernateProvider) provider).removeCurrentTransaction();
+        closeSessionIfNeed(hibernateProvider);
+    }
+
+    private void closeSessionIfNeed(HibernateProvider provider) {
+        HibernateTransaction _tx = provider.currentTransaction();
+        if (_tx != null && _tx.isAutoCommit()) {
+            Session session = _tx.getSession();
+            if (session != null) {
+                session.close();
             }
-            return;
+            /**
+             * Remove from this thread
+             */
+            provider.removeCurrentTransaction();
+            provider.sessionClosed();
         }
-        throw new RuntimeException("DataAccessProvider for " + dataSource() + " is not HibernateProvider");
     }
 
     protected final void execute(HibernateCommand command) {
-        Session session = getSession();
-        ClockWatch cw = ClockService.newClockWatch();
-        try {
+        execute(Operation.EXECUTE, command);
+    }
+
+    protected final <E extends Object> E execute(HibernateCommandWithReturn<E> command) {
+        return execute(Operation.EXECUTE, command);
+    }
+
+    /**
+     * Execute command and record it as operation in metrics of the data
+     * source
+     *
+     * @param operation
+     * @param command
+     */
+    protected final void execute(Operation operation, HibernateCommand command) {
+        execute(operation, -1, command);
+    }
+
+    private void execute(Operation operation, int rows, HibernateCommand command) {
+        execute(write(operation).rows(rows), session -> {
             command.apply(session);
-            commitTransaction();
+            return null;
+        });
+    }
+
+    protected final <E extends Object> E execute(Operation operation, HibernateCommandWithReturn<E> command) {
+        return execute(write(operation), command);
+    }
+
+    /**
+     * Execute a read-only command on {@link #findReadProvider()}
+     *
+     * @param <E>
+     * @param command
+     * @return
+     */
+    protected final <E extends Object> E executeRead(HibernateCommandWithReturn<E> command) {
+        return executeRead(Operation.EXECUTE, command);
+    }
+
+    protected final <E extends Object> E executeRead(Operation operation, HibernateCommandWithReturn<E> command) {
+        return execute(read(operation), command);
+    }
+
+    /**
+     * Execute a command which runs query, the query is recorded by slow query
+     * tracker of the data source
+     */
+    private <E extends Object> E executeRead(Operation operation, String query, Map<String, Object> params, HibernateCommandWithReturn<E> command) {
+        return execute(read(operation).query(query, params), command);
+    }
+
+    /**
+     * Run a finder query and return its result as fetch. Read finders are
+     * served by the query result cache if cached() was called by this thread,
+     * misses are loaded on the primary.
+     */
+    private <E extends Object> E fetch(Operation operation, Fetch fetch, String query, Map<String, Object> params, Class<?> dto) {
+        if (fetch == Fetch.UPDATE || fetch == Fetch.NATIVE_UPDATE) {
+            return execute(write(operation).query(query, params), fetch, dto);
+        }
+        return fetch(read(operation), fetch, query, params, dto);
+    }
+
+    private <E extends Object> E fetch(Call call, Fetch fetch, String query, Map<String, Object> params, Class<?> dto) {
+        QueryOptions _options = options.get();
+        boolean useCache = _options.cached;
+        _options.cached = false;
+        /**
+         * Results read in an explicit transaction may contain its uncommitted
+         * writes, they are never cached
+         */
+        QueryResultCache cache = useCache && !isInTransaction() ? hibernateProvider.getQueryCache() : null;
+        if (cache == null) {
+            return execute(call.query(query, params), fetch, dto);
+        }
+        try {
+            return cache.get(query, params, dto, _options.limit,
+                    () -> execute(primary(call.operation).query(query, params), fetch, dto));
+        } finally {
+            _options.limit = -1;
+        }
+    }
+
+    private Object fetch(Session session, Fetch fetch, String query, Map<String, Object> params, Class<?> dto) {
+        Query<?> qr = fetch.nativeQuery
+                ? createNativeQuery(session, query, params, dto)
+                : createQuery(session, query, params, dto);
+        switch (fetch) {
+            case LIST:
+            case NATIVE_LIST:
+                return qr.getResultList();
+            case FIRST:
+            case NATIVE_FIRST:
+                List<?> records = qr.getResultList();
+                return Validate.isNullOrEmpty(records) ? null : records.get(0);
+            case COUNT:
+            case NATIVE_COUNT:
+                Number result = (Number) qr.uniqueResult();
+                return result == null ? 0 : result.intValue();
+            default:
+                return qr.executeUpdate();
+        }
+    }
+
+    private QueryResultCache queryCache() {
+        return hibernateProvider.getQueryCache();
+    }
+
+    private EntityCache entityCache() {
+        return hibernateProvider.getEntityCache();
+    }
+
+    /**
+     * @return id queries of dto registered by the provider at startup
+     */
+    private EntityQueryRegistry.EntityQueries entityQueries(Class<?> dto) {
+        EntityQueryRegistry registry = hibernateProvider.getEntityQueries();
+        return registry == null ? EntityQueryRegistry.EntityQueries.of(dto) : registry.of(dto);
+    }
+
+    private void clearQueryOptions() {
+        options.get().clear();
+    }
+
+    /**
+     * Run invalidation of caches of a write once it is committed: at once if
+     * the write ran in its own auto-commit session, after commit of the
+     * explicit transaction of this thread otherwise. If caches were
+     * invalidated before commit, readers of other sessions would cache the
+     * old rows again as fresh.
+     */
+    private void afterCommit(Runnable invalidation) {
+        HibernateTransaction _tx = hibernateProvider.currentTransaction();
+        if (_tx != null && !_tx.isAutoCommit()) {
+            _tx.afterCommit(invalidation);
+        } else {
+            invalidation.run();
+        }
+    }
+
+    private void onWrite(Object object) {
+        if (object == null) {
+            return;
+        }
+        Class<?> entityClass = HibernateProxyHelper.getClassWithoutInitializingProxy(object);
+        QueryResultCache cache = queryCache();
+        if (cache != null) {
+            afterCommit(() -> cache.invalidate(entityClass));
+        }
+        EntityCache _entityCache = entityCache();
+        if (_entityCache != null) {
+            afterCommit(() -> _entityCache.evict(entityClass, object));
+        }
+    }
+
+    private void onWrite(Collection objects) {
+        QueryResultCache cache = queryCache();
+        EntityCache _entityCache = entityCache();
+        if ((cache == null && _entityCache == null) || objects == null) {
+            return;
+        }
+        afterCommit(() -> {
+            Set<Class<?>> classes = new HashSet<>();
+            for (Object object : objects) {
+                if (object == null) {
+                    continue;
+                }
+                Class<?> entityClass = HibernateProxyHelper.getClassWithoutInitializingProxy(object);
+                classes.add(entityClass);
+                if (_entityCache != null) {
+                    _entityCache.evict(entityClass, object);
+                }
+            }
+            if (cache != null) {
+                classes.forEach(cache::invalidate);
+            }
+        });
+    }
+
+    private void onUpdate(String query) {
+        QueryResultCache cache = queryCache();
+        if (cache != null) {
+            afterCommit(() -> cache.invalidate(query));
+        }
+        EntityCache _entityCache = entityCache();
+        if (_entityCache != null) {
+            afterCommit(() -> _entityCache.evictAll(query));
+        }
+    }
+
+    private void onUpdate(Class<?> dto) {
+        QueryResultCache cache = queryCache();
+        if (cache != null) {
+            afterCommit(() -> cache.invalidate(dto));
+        }
+        EntityCache _entityCache = entityCache();
+        if (_entityCache != null) {
+            afterCommit(() -> _entityCache.evictAll(dto));
+        }
+    }
+
+    private void onUpdateAll() {
+        QueryResultCache cache = queryCache();
+        if (cache != null) {
+            afterCommit(cache::invalidateAll);
+        }
+        EntityCache _entityCache = entityCache();
+        if (_entityCache != null) {
+            afterCommit(_entityCache::evictAll);
+        }
+    }
+
+    /**
+     * Invalidate caches after a write which bypassed the Session and was
+     * committed in its own transaction, e.g. by a {@link StatelessSession}.
+     * It runs at once even in an explicit transaction of this thread because
+     * the rows are committed whatever that transaction does. Second level
+     * cache regions are evicted too, Hibernate does not see these writes.
+     *
+     * @param wholeClasses evict all cached entities of the classes of objects,
+     * not only their ids
+     */
+    private void onCommittedWrite(Collection objects, boolean wholeClasses) {
+        EntityCache _entityCache = entityCache();
+        Set<Class<?>> classes = new HashSet<>();
+        for (Object object : objects) {
+            if (object == null) {
+                continue;
+            }
+            Class<?> entityClass = HibernateProxyHelper.getClassWithoutInitializingProxy(object);
+            classes.add(entityClass);
+            if (_entityCache != null && !wholeClasses) {
+                _entityCache.evict(entityClass, object);
+            }
+        }
+        QueryResultCache cache = queryCache();
+        for (Class<?> entityClass : classes) {
+            if (cache != null) {
+                cache.invalidate(entityClass);
+            }
+            if (_entityCache != null && wholeClasses) {
+                _entityCache.evictAll(entityClass);
+            }
+        }
+        hibernateProvider.evictSecondLevelCache(classes);
+    }
+
+    /**
+     * Invalidate all caches after a committed write whose tables are unknown,
+     * see {@link #onCommittedWrite(Collection, boolean)}
+     */
+    private void onCommittedUpdateAll() {
+        QueryResultCache cache = queryCache();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        EntityCache _entityCache = entityCache();
+        if (_entityCache != null) {
+            _entityCache.evictAll();
+        }
+        hibernateProvider.evictSecondLevelCache();
+    }
+
+    /**
+     * @return call of a write on the primary in the transaction of this
+     * thread
+     */
+    private Call write(Operation operation) {
+        return new Call(hibernateProvider, false, operation);
+    }
+
+    /**
+     * @return call of a finder on {@link #findReadProvider()}
+     */
+    private Call read(Operation operation) {
+        return new Call(findReadProvider(), isReadOnlyFinders(), operation);
+    }
+
+    /**
+     * @return call of a finder on the primary. Cached results are loaded on
+     * the primary: a replica may lag and its rows would be cached as current
+     * until the next write.
+     */
+    private Call primary(Operation operation) {
+        return new Call(hibernateProvider, isReadOnlyFinders(), operation);
+    }
+
+    /**
+     * Run the query of call and return its result as fetch
+     */
+    private <E extends Object> E execute(Call call, Fetch fetch, Class<?> dto) {
+        return execute(call, session -> (E) fetch(session, fetch, call.query, call.params, dto));
+    }
+
+    /**
+     * Run command in the transaction of this thread on the provider of call,
+     * or in its own auto-commit transaction if there is none
+     */
+    private <E extends Object> E execute(Call call, HibernateCommandWithReturn<E> command) {
+        RepositoryMetrics metrics = hibernateProvider.getMetrics();
+        SlowQueryTracker tracker = call.query == null ? null : hibernateProvider.getSlowQueryTracker();
+        boolean statsTime = hibernateProvider.isStatsTime();
+        long begin = tracker != null || statsTime ? System.nanoTime() : 0;
+        long start = metrics.start(call.operation);
+        Session session = openTransaction(call.provider, call.readOnly);
+        E rs = null;
+        boolean failed = true;
+        try {
+            rs = command.apply(session);
+            commitTransaction(call.provider);
+            failed = false;
+            return rs;
         } catch (Exception e) {
             rollbackTransaction(session, e);
             throw new RuntimeException(e);
         } finally {
-            closeSessionIfNeed();
+            closeSessionIfNeed(call.provider);
+            long _rows = call.rows >= 0 ? call.rows : rows(call.operation, rs);
+            metrics.stop(call.operation, start, _rows, failed);
+            if (tracker != null || statsTime) {
+                long elapsed = System.nanoTime() - begin;
+                if (tracker != null) {
+                    tracker.record(call.query, call.params, elapsed, _rows);
+                }
+                if (statsTime) {
+                    LOGGER.info("Execute hibernate query in {} us", elapsed / 1000);
+                }
+            }
+        }
+    }
+
+    private static long rows(Operation operation, Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection) result).size();
+        }
+        if (operation == Operation.EXECUTE_UPDATE && result instanceof Number) {
+            return ((Number) result).longValue();
+        }
+        return 1;
+    }
+
+    /**
+     * Execute command on a new {@link StatelessSession} with JDBC batching
+     * enabled. There is no persistence context, dirty checking or cascade.
+     * The command always runs in its own transaction even if there is an
+     * explicit transaction associated to this thread. All caches are
+     * invalidated once it is committed.
+     *
+     * @param command
+     */
+    protected final void executeStateless(HibernateStatelessCommand command) {
+        executeStateless(-1, command);
+        onCommittedUpdateAll();
+    }
+
+    private void executeStateless(int rows, HibernateStatelessCommand command) {
+        RepositoryMetrics metrics = hibernateProvider.getMetrics();
+        long start = metrics.start(Operation.BULK_WRITE);
+        boolean failed = true;
+        StatelessSession session = sessionFactory.openStatelessSession();
+        long begin = System.nanoTime();
+        try {
+            session.setJdbcBatchSize(getJdbcBatchSize());
+            session.beginTransaction();
+            command.apply(session);
+            commit(metrics, session.getTransaction());
+            failed = false;
+        } catch (Exception e) {
+            LOGGER.error("Execute stateless transaction (state={}) error", session.getTransaction().getStatus(), e);
+            if (session.getTransaction().isActive()) {
+                try {
+                    session.getTransaction().rollback();
+                } catch (Exception ex) {
+                    LOGGER.error("Rollback transaction get error", ex);
+                }
+            }
+            throw new RuntimeException(e);
+        } finally {
+            session.close();
+            metrics.stop(Operation.BULK_WRITE, start, rows, failed);
             if (isStatsTime()) {
-                LOGGER.info("Execute hibernate query in {} us", cw.timeElapsedUS());
+                LOGGER.info("Execute hibernate stateless command in {} us", (System.nanoTime() - begin) / 1000);
             }
         }
+    }
 
+    /**
+     * Open a lazy stream on the query built by command. Outside of an explicit
+     * transaction the stream owns its session: entities are loaded read-only,
+     * the session is cleared every stream-clear-size rows and the
+     * session/transaction are closed when the stream is closed. Inside an
+     * explicit transaction the current session is used and never cleared.
+     *
+     * The returned stream must be closed, e.g. by try-with-resources.
+     *
+     * @param <E>
+     * @param command
+     * @param fetchSize
+     * @return
+     */
+    protected final <E extends Object> Stream<E> stream(HibernateCommandWithReturn<Query<E>> command, int fetchSize) {
+        return stream(null, null, command, fetchSize);
     }
 
-    protected final <E extends Object> E execute(HibernateCommandWithReturn<E> command) {
-        Session session = getSession();
-        ClockWatch cw = ClockService.newClockWatch();
+    private <E extends Object> Stream<E> stream(String queryString, Map<String, Object> params,
+            HibernateCommandWithReturn<Query<E>> command, int fetchSize) {
+        final HibernateProvider provider = findReadProvider();
+        final SlowQueryTracker tracker = queryString == null ? null : hibernateProvider.getSlowQueryTracker();
+        final long trackerStart = tracker == null ? 0 : System.nanoTime();
+        final HibernateTransaction _tx = provider.currentTransaction();
+        final boolean inTransaction = _tx != null;
+        final Session session = inTransaction ? _tx.getSession() : provider.getSessionFactory().openSession();
+        final boolean readOnly = !inTransaction && isReadOnlyFinders();
+        final RepositoryMetrics metrics = hibernateProvider.getMetrics();
+        final long start = metrics.start(Operation.FIND_STREAM);
+        ScrollableResults results = null;
         try {
-            E rs = command.apply(session);
-            commitTransaction();
-            return rs;
+            if (!inTransaction) {
+                provider.sessionOpened();
+                if (readOnly) {
+                    session.setDefaultReadOnly(true);
+                    session.setHibernateFlushMode(FlushMode.MANUAL);
+                }
+                session.beginTransaction();
+                if (readOnly && provider.isReadOnlyConnection()) {
+                    session.doWork(connection -> connection.setReadOnly(true));
+                }
+            }
+            Query<E> query = command.apply(session);
+            query.setFetchSize(fetchSize);
+            if (!inTransaction) {
+                query.setReadOnly(true);
+            }
+            results = query.scroll(ScrollMode.FORWARD_ONLY);
+            final ScrollableResults scrollableResults = results;
+            final ScrollableResultsSpliterator<E> spliterator = new ScrollableResultsSpliterator<>(session, scrollableResults,
+                    inTransaction ? 0 : getStreamClearSize());
+            return StreamSupport.stream(spliterator, false)
+                    .onClose(() -> {
+                        boolean failed = !closeStream(provider, session, scrollableResults, inTransaction);
+                        metrics.stop(Operation.FIND_STREAM, start, spliterator.rows(), failed);
+                        if (tracker != null) {
+                            tracker.record(queryString, params, System.nanoTime() - trackerStart, spliterator.rows());
+                        }
+                    });
         } catch (Exception e) {
+            metrics.stop(Operation.FIND_STREAM, start, 0, true);
+            if (results != null) {
+                results.close();
+            }
             rollbackTransaction(session, e);
+            if (!inTransaction) {
+                session.close();
+                provider.sessionClosed();
+            }
             throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return false if the transaction of stream can not be committed
+     */
+    private boolean closeStream(HibernateProvider provider, Session session, ScrollableResults results, boolean inTransaction) {
+        try {
+            results.close();
+            if (!inTransaction && session.getTransaction().getStatus() == TransactionStatus.ACTIVE) {
+                commit(hibernateProvider.getMetrics(), session.getTransaction());
+            }
+            return true;
+        } catch (Exception e) {
+            rollbackTransaction(session, e);
+            return false;
         } finally {
-            closeSessionIfNeed();
-            if (isStatsTime()) {
-                LOGGER.info("Execute hibernate query in {} us", cw.timeElapsedUS());
+            if (!inTransaction) {
+                session.close();
+                provider.sessionClosed();
             }
         }
     }
@@ -199,17 +868,30 @@ public abstract class HibernateRepository extends Repository {
         if (!Validate.isNullOrEmpty(params)) {
             params.forEach(qr::setParameter);
         }
-        int value = limit.get();
-        if (value >= 0) {
-            qr.setMaxResults(value);
+        QueryOptions _options = options.get();
+        if (_options.limit >= 0) {
+            qr.setMaxResults(_options.limit);
         }
-        limit.remove();
+        _options.limit = -1;
+        applyCacheable(_options, qr);
         if (isStatsSql()) {
             LOGGER.info("Hibernate query: {} with parameters {}", qr.getQueryString(), params);
         }
         return qr;
     }
 
+    private static void applyCacheable(QueryOptions _options, Query<?> qr) {
+        String region = _options.cacheRegion;
+        if (region == null) {
+            return;
+        }
+        _options.cacheRegion = null;
+        qr.setCacheable(true);
+        if (!region.isEmpty()) {
+            qr.setCacheRegion(region);
+        }
+    }
+
     protected final void executeWork(Work work) {
         if (Validate.isNull(work)) {
             LOGGER.error("Work is null", new NullPointerException("Work is null"));
@@ -220,6 +902,7 @@ public abstract class HibernateRepository extends Repository {
             session.doWork(work);
             tx.commit();
         }
+        onCommittedUpdateAll();
     }
 
     protected final <E extends Object> NativeQuery<E> createNativeQuery(Session session, String query, Map<String, Object> params, Class<E> dto) {
@@ -233,11 +916,12 @@ public abstract class HibernateRepository extends Repository {
             params.forEach(qr::setParameter);
         }
 
-        int value = limit.get();
-        if (value > 0) {
-            qr.setMaxResults(value);
+        QueryOptions _options = options.get();
+        if (_options.limit > 0) {
+            qr.setMaxResults(_options.limit);
         }
-        limit.remove();
+        _options.limit = -1;
+        applyCacheable(_options, qr);
 
         if (isStatsSql()) {
             LOGGER.info("Hibernate native-query: {} with parameters {}", qr.getQueryString(), params);
@@ -246,13 +930,14 @@ public abstract class HibernateRepository extends Repository {
     }
 
     public final void save(Object object) {
-        execute(session -> {
+        execute(Operation.SAVE, session -> {
             session.save(object);
         });
+        onWrite(object);
     }
 
     public final void saves(Collection objects) {
-        execute(session -> {
+        execute(Operation.SAVES, objects.size(), session -> {
             final AtomicInteger i = new AtomicInteger(0);
             objects.forEach(object -> {
                 session.save(object);
@@ -265,16 +950,18 @@ public abstract class HibernateRepository extends Repository {
             session.flush();
             session.clear();
         });
+        onWrite(objects);
     }
 
     public final void saveOrUpdatge(Object object) {
-        execute(session -> {
+        execute(Operation.SAVE, session -> {
             session.saveOrUpdate(object);
         });
+        onWrite(object);
     }
 
     public final void saveOrUpdates(Collection objects) {
-        execute(session -> {
+        execute(Operation.SAVES, objects.size(), session -> {
             final AtomicInteger i = new AtomicInteger(0);
             objects.forEach(object -> {
                 session.saveOrUpdate(object);
@@ -287,16 +974,18 @@ public abstract class HibernateRepository extends Repository {
             session.flush();
             session.clear();
         });
+        onWrite(objects);
     }
 
     public final void update(Object object) {
-        execute(session -> {
+        execute(Operation.UPDATE, session -> {
             session.update(object);
         });
+        onWrite(object);
     }
 
     public final void updates(Collection objects) {
-        execute(session -> {
+        execute(Operation.UPDATES, objects.size(), session -> {
             final AtomicInteger i = new AtomicInteger(0);
             objects.forEach(object -> {
                 session.update(object);
@@ -309,16 +998,18 @@ public abstract class HibernateRepository extends Repository {
             session.flush();
             session.clear();
         });
+        onWrite(objects);
     }
 
     public final void delete(Object object) {
-        execute(session -> {
+        execute(Operation.DELETE, session -> {
             session.delete(object);
         });
+        onWrite(object);
     }
 
     public final void deletes(Collection objects) {
-        execute(session -> {
+        execute(Operation.DELETES, objects.size(), session -> {
             final AtomicInteger i = new AtomicInteger(0);
             objects.forEach((Object obj) -> {
                 session.delete(obj);
@@ -331,134 +1022,809 @@ public abstract class HibernateRepository extends Repository {
             session.flush();
             session.clear();
         });
+        onWrite(objects);
+    }
+
+    /**
+     * Queue a save of object to the write-behind buffer of its class. The
+     * save is committed with other queued writes by the flusher of the
+     * buffer. If write-behind is not configured for the class, object is
+     * saved immediately.
+     *
+     * @param object
+     * @return future which completes when the save is committed
+     */
+    public final CompletableFuture<Void> saveBehind(Object object) {
+        return writeBehind(WriteBehindBuffer.Mode.SAVE, object);
+    }
+
+    /**
+     * Queue an update of object to the write-behind buffer of its class.
+     * Updates of the same id which are flushed together are coalesced, the
+     * last one wins.
+     *
+     * @param object
+     * @return future which completes when the update is committed
+     * @see #saveBehind(java.lang.Object)
+     */
+    public final CompletableFuture<Void> updateBehind(Object object) {
+        return writeBehind(WriteBehindBuffer.Mode.UPDATE, object);
+    }
+
+    /**
+     * @param object
+     * @return future which completes when the save or update is committed
+     * @see #updateBehind(java.lang.Object)
+     */
+    public final CompletableFuture<Void> saveOrUpdateBehind(Object object) {
+        return writeBehind(WriteBehindBuffer.Mode.SAVE_OR_UPDATE, object);
+    }
+
+    /**
+     * @param object
+     * @return future which completes when the delete is committed
+     * @see #saveBehind(java.lang.Object)
+     */
+    public final CompletableFuture<Void> deleteBehind(Object object) {
+        return writeBehind(WriteBehindBuffer.Mode.DELETE, object);
+    }
+
+    private CompletableFuture<Void> writeBehind(WriteBehindBuffer.Mode mode, Object object) {
+        WriteBehindBuffer buffer = hibernateProvider.getWriteBehindBuffer(HibernateProxyHelper.getClassWithoutInitializingProxy(object));
+        if (buffer != null) {
+            return buffer.write(mode, object);
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            switch (mode) {
+                case SAVE:
+                    save(object);
+                    break;
+                case UPDATE:
+                    update(object);
+                    break;
+                case SAVE_OR_UPDATE:
+                    saveOrUpdatge(object);
+                    break;
+                default:
+                    delete(object);
+            }
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Save objects in partitions written in parallel on the query-spliterator
+     * pool of the data source, each partition in its own transaction.
+     * Partitions have max collection size objects, parallelism is the pool
+     * parallelism.
+     *
+     * @param objects
+     * @return result of every partition, failed partitions can be retried
+     */
+    public final PartitionedWriteReport<Object> parallelSaves(Collection objects) {
+        return parallelSaves(objects, getMaxCollectionSize(), hibernateProvider.getSpliteratorParallelism(), false);
+    }
+
+    /**
+     * Save objects in partitions of partitionSize objects, at most
+     * parallelism partitions are written at the same time. It must not be
+     * called in an explicit transaction.
+     *
+     * @param objects
+     * @param partitionSize
+     * @param parallelism capped by the pool parallelism, which is capped by
+     * the connection pool size
+     * @param orderById sort objects by id before partitioning so partitions
+     * lock rows in the same order and do not deadlock each other
+     * @return result of every partition, failed partitions can be retried
+     */
+    public final PartitionedWriteReport<Object> parallelSaves(Collection objects, int partitionSize, int parallelism, boolean orderById) {
+        return parallelWrite(objects, partitionSize, parallelism, orderById, this::saves);
+    }
+
+    public final PartitionedWriteReport<Object> parallelSaveOrUpdates(Collection objects) {
+        return parallelSaveOrUpdates(objects, getMaxCollectionSize(), hibernateProvider.getSpliteratorParallelism(), false);
+    }
+
+    /**
+     * @see #parallelSaves(java.util.Collection, int, int, boolean)
+     */
+    public final PartitionedWriteReport<Object> parallelSaveOrUpdates(Collection objects, int partitionSize, int parallelism, boolean orderById) {
+        return parallelWrite(objects, partitionSize, parallelism, orderById, this::saveOrUpdates);
+    }
+
+    public final PartitionedWriteReport<Object> parallelUpdates(Collection objects) {
+        return parallelUpdates(objects, getMaxCollectionSize(), hibernateProvider.getSpliteratorParallelism(), false);
+    }
+
+    /**
+     * @see #parallelSaves(java.util.Collection, int, int, boolean)
+     */
+    public final PartitionedWriteReport<Object> parallelUpdates(Collection objects, int partitionSize, int parallelism, boolean orderById) {
+        return parallelWrite(objects, partitionSize, parallelism, orderById, this::updates);
+    }
+
+    public final PartitionedWriteReport<Object> parallelDeletes(Collection objects) {
+        return parallelDeletes(objects, getMaxCollectionSize(), hibernateProvider.getSpliteratorParallelism(), false);
+    }
+
+    /**
+     * @see #parallelSaves(java.util.Collection, int, int, boolean)
+     */
+    public final PartitionedWriteReport<Object> parallelDeletes(Collection objects, int partitionSize, int parallelism, boolean orderById) {
+        return parallelWrite(objects, partitionSize, parallelism, orderById, this::deletes);
+    }
+
+    private PartitionedWriteReport<Object> parallelWrite(Collection objects, int partitionSize, int parallelism,
+            boolean orderById, Consumer<List<Object>> write) {
+        if (partitionSize <= 0) {
+            throw new RuntimeException("partition-size must be larger than zero");
+        }
+        if (isInTransaction()) {
+            throw new RuntimeException("Parallel writes can not join the explicit transaction of this thread");
+        }
+        List<Object> items = new ArrayList<>(objects);
+        if (orderById) {
+            items.sort(Comparator.comparing(this::comparableId, Comparator.nullsLast(Comparator.naturalOrder())));
+        }
+        List<List<Object>> partitions = Lists.partition(items, partitionSize);
+        return hibernateProvider.writePartitions(partitions, parallelism, partition -> {
+            write.accept(partition);
+            return partition.size();
+        });
+    }
+
+    private Comparable comparableId(Object object) {
+        Object id = sessionFactory.getPersistenceUnitUtil().getIdentifier(object);
+        if (id == null || id instanceof Comparable) {
+            return (Comparable) id;
+        }
+        throw new RuntimeException("Id of " + object.getClass().getName() + " is not comparable");
+    }
+
+    /**
+     * Insert objects through a {@link StatelessSession}. Rows are sent in
+     * JDBC batches of jdbc batch size, associations are not cascaded.
+     *
+     * @param objects
+     */
+    public final void bulkInsert(Collection objects) {
+        executeStateless(objects.size(), session -> {
+            objects.forEach(session::insert);
+        });
+        onCommittedWrite(objects, false);
+    }
+
+    /**
+     * Update objects through a {@link StatelessSession}. Rows are sent in
+     * JDBC batches of jdbc batch size, associations are not cascaded.
+     *
+     * @param objects
+     */
+    public final void bulkUpdate(Collection objects) {
+        executeStateless(objects.size(), session -> {
+            objects.forEach(session::update);
+        });
+        onCommittedWrite(objects, false);
+    }
+
+    /**
+     * Delete objects through a {@link StatelessSession}. Rows are sent in
+     * JDBC batches of jdbc batch size, associations are not cascaded.
+     *
+     * @param objects
+     */
+    public final void bulkDelete(Collection objects) {
+        executeStateless(objects.size(), session -> {
+            objects.forEach(session::delete);
+        });
+        onCommittedWrite(objects, false);
+    }
+
+    /**
+     * Insert objects or update rows which conflict with them with native
+     * multi-row statements generated from the entity mapping, see
+     * {@link BulkUpsert} for supported dialects. A statement carries up to
+     * multi-row.rows-per-statement rows and statements are sent in JDBC
+     * batches.
+     *
+     * Identifiers which are not assigned are generated before the statement
+     * runs. Objects are not attached to the session and associations are not
+     * cascaded. The upsert joins the explicit transaction of this thread if
+     * there is one. Polymorphic and versioned entities are not supported.
+     *
+     * A row matched by conflict keys keeps its identifier, the identifier of
+     * its object is not updated.
+     *
+     * @param objects
+     * @param conflictKeys properties of the unique key which detects
+     * conflicts, the identifier if it is empty. They are required if the
+     * identifier is generated by the database. MySQL ignores them and uses
+     * every unique key of the table.
+     */
+    public final void bulkUpsert(Collection objects, String... conflictKeys) {
+        if (Validate.isNullOrEmpty(objects)) {
+            return;
+        }
+        Map<Class<?>, List<Object>> groups = groupByClass(objects);
+        execute(Operation.BULK_WRITE, objects.size(), session -> {
+            session.flush();
+            SessionImplementor sessionImplementor = (SessionImplementor) session;
+            session.doWork(connection -> {
+                for (Map.Entry<Class<?>, List<Object>> group : groups.entrySet()) {
+                    new BulkUpsert(hibernateProvider.entityTable(group.getKey()), hibernateProvider.getDialect(), conflictKeys)
+                            .execute(sessionImplementor, connection, group.getValue(), hibernateProvider.getMultiRowSize(),
+                                    hibernateProvider.getMaxParameters(), getJdbcBatchSize());
+                }
+            });
+        });
+        /**
+         * Rows matched by conflict keys keep their ids, which objects may not
+         * have, so their whole classes are evicted
+         */
+        boolean wholeClasses = conflictKeys != null && conflictKeys.length > 0;
+        afterCommit(() -> onCommittedWrite(objects, wholeClasses));
+    }
+
+    /**
+     * Insert objects with native multi-row
+     * <code>INSERT ... VALUES (...), (...)</code> statements on one plain
+     * JDBC connection of the data source, in its own transaction. Columns are read
+     * from the entity mapping. A statement carries up to
+     * multi-row.rows-per-statement rows and never more bind parameters than
+     * multi-row.max-parameters, statements are sent in JDBC batches.
+     *
+     * Identifiers which are not assigned are allocated by the identifier
+     * generator of the entity, a pooled sequence optimizer allocates a block
+     * of ids per sequence call. Identifiers generated by the database are not
+     * read back. Objects are not attached to any session and associations are
+     * not cascaded. Polymorphic and versioned entities are not supported.
+     * Caches are invalidated once the insert is committed, even in an explicit
+     * transaction of this thread.
+     *
+     * @param objects
+     */
+    public final void multiRowInsert(Collection objects) {
+        if (Validate.isNullOrEmpty(objects)) {
+            return;
+        }
+        Map<Class<?>, List<Object>> groups = groupByClass(objects);
+        RepositoryMetrics metrics = hibernateProvider.getMetrics();
+        long start = metrics.start(Operation.BULK_WRITE);
+        boolean failed = true;
+        long begin = System.nanoTime();
+        int statements = 0;
+        try {
+            Connection connection = hibernateProvider.openConnection();
+            try {
+                boolean autoCommit = connection.getAutoCommit();
+                /**
+                 * Identifiers are generated on the same connection, a second
+                 * connection of the pool per insert could deadlock under load
+                 */
+                try (StatelessSession session = sessionFactory.openStatelessSession(connection)) {
+                    SharedSessionContractImplementor sessionImplementor = (SharedSessionContractImplementor) session;
+                    connection.setAutoCommit(false);
+                    for (Map.Entry<Class<?>, List<Object>> group : groups.entrySet()) {
+                        statements += new MultiRowInsert(hibernateProvider.entityTable(group.getKey()))
+                                .execute(sessionImplementor, connection, group.getValue(), hibernateProvider.getMultiRowSize(),
+                                        hibernateProvider.getMaxParameters(), getJdbcBatchSize());
+                    }
+                    connection.commit();
+                    failed = false;
+                } catch (Exception e) {
+                    LOGGER.error("Execute multi-row insert error", e);
+                    try {
+                        connection.rollback();
+                    } catch (SQLException ex) {
+                        LOGGER.error("Rollback multi-row insert get error", ex);
+                    }
+                    throw e;
+                } finally {
+                    try {
+                        connection.setAutoCommit(autoCommit);
+                    } catch (SQLException ex) {
+                        LOGGER.error("Restore auto commit of multi-row insert connection get error", ex);
+                    }
+                }
+            } finally {
+                hibernateProvider.closeConnection(connection);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            metrics.stop(Operation.BULK_WRITE, start, objects.size(), failed);
+            if (isStatsTime()) {
+                LOGGER.info("Execute multi-row insert of {} rows in {} statements in {} us",
+                        objects.size(), statements, (System.nanoTime() - begin) / 1000);
+            }
+        }
+        onCommittedWrite(objects, false);
+    }
+
+    private static Map<Class<?>, List<Object>> groupByClass(Collection objects) {
+        Map<Class<?>, List<Object>> groups = new LinkedHashMap<>();
+        for (Object object : objects) {
+            groups.computeIfAbsent(HibernateProxyHelper.getClassWithoutInitializingProxy(object), c -> new ArrayList<>())
+                    .add(object);
+        }
+        return groups;
     }
 
     public final <E extends Object> E findById(long id, Class<E> dto) {
-        String query = new StringBuilder()
-                .append("SELECT r FROM ").append(dto.getName()).append(" r ")
-                .append("WHERE r.id = :id")
-                .toString();
-        return findSingle(query, ImmutableMap.of("id", id), dto);
+        String query = entityQueries(dto).findById;
+        EntityCache cache = entityCache();
+        if (cache == null || !cache.isCached(dto) || isInTransaction()) {
+            return findSingle(Operation.FIND_BY_ID, query, ImmutableMap.of("id", id), dto);
+        }
+        E entity = cache.get(dto, id);
+        if (entity != null) {
+            clearQueryOptions();
+            return entity;
+        }
+        long generation = cache.generation(dto);
+        /**
+         * A replica may lag, its row would be cached as current
+         */
+        entity = fetch(primary(Operation.FIND_BY_ID), Fetch.FIRST, query, ImmutableMap.of("id", id), dto);
+        cache.put(dto, entity, generation);
+        return entity;
     }
 
+    /**
+     * Find entities by ids ordered by id. If entity near cache is enabled for
+     * dto, only ids which are not cached are loaded from database, on the
+     * primary. The near cache is not used in an explicit transaction.
+     *
+     * @param <E>
+     * @param ids
+     * @param dto
+     * @return
+     */
     public final <E extends Object> List<E> findByIds(Collection<Long> ids, Class<E> dto) {
+        EntityCache cache = entityCache();
+        if (cache == null || !cache.isCached(dto) || isInTransaction()) {
+            return loadByIds(ids, dto, false);
+        }
+        Map<Object, E> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            E entity = cache.get(dto, id);
+            if (entity != null) {
+                found.put(id, entity);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            clearQueryOptions();
+        } else {
+            long generation = cache.generation(dto);
+            for (E entity : loadByIds(missing, dto, true)) {
+                cache.put(dto, entity, generation);
+                found.put(cache.idOf(entity), entity);
+            }
+        }
+        List<E> results = new ArrayList<>(found.size());
+        ids.stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .distinct()
+                .forEach((long id) -> {
+                    E entity = found.get(id);
+                    if (entity != null) {
+                        results.add(entity);
+                    }
+                });
+        return results;
+    }
+
+    /**
+     * Find entities by ids ordered by id. The array is wrapped, not boxed
+     * into a list upfront: it is partitioned into views, which are sorted in
+     * a copy only if it is split into many queries. Ids are still boxed
+     * where a query binds them, in-clause padding copies the ids of a chunk
+     * if it is enabled and ids missing from the entity cache are collected
+     * boxed. Use {@link LongIds#sorted(long...)} to sort and de-duplicate ids
+     * upfront.
+     *
+     * @param <E>
+     * @param ids
+     * @param dto
+     * @return
+     */
+    public final <E extends Object> List<E> findByIds(long[] ids, Class<E> dto) {
+        return findByIds(LongIds.of(ids), dto);
+    }
+
+    /**
+     * Load entities by ids, on the primary if they are put to the entity
+     * cache because a replica may lag
+     */
+    private <E extends Object> List<E> loadByIds(Collection<Long> ids, Class<E> dto, boolean onPrimary) {
+        EntityTable table = idTableEntity(ids, dto);
+        if (table != null) {
+            String idColumn = table.getIdColumns()[0];
+            String query = "SELECT r.* FROM " + table.getTable() + " r WHERE r." + idColumn
+                    + " IN (SELECT id FROM " + hibernateProvider.getIdTable().getName() + ") ORDER BY r." + idColumn;
+            return executeWithIdTable(Operation.FIND_BY_IDS, query, ids, session -> {
+                return createNativeQuery(session, query, null, dto).getResultList();
+            });
+        }
         return QuerySpliterator.of(dto)
+                .withProvider(findProvider())
                 .splitBy("ids", ids, getMaxCollectionSize())
-                .setQuery(new StringBuilder()
-                        .append("SELECT r FROM ").append(dto.getName()).append(" r ")
-                        .append("WHERE r.id IN :ids ORDER BY r.id ASC")
-                        .toString())
-                .findMany((FindMany<Long, E>) this::findMany);
+                .setQuery(entityQueries(dto).findByIds)
+                .setMergeMode(MergeMode.CONCAT)
+                .findMany((FindMany<Long, E>) (query, arguments, clazz) -> {
+                    return fetch(onPrimary ? primary(Operation.FIND_BY_IDS) : read(Operation.FIND_BY_IDS),
+                            Fetch.LIST, query, arguments, clazz);
+                });
     }
 
     public final <E extends Object> int deleteById(long id, Class<E> dto) {
-        String query = new StringBuilder()
-                .append("DELETE FROM ").append(dto.getName()).append(" r ")
-                .append("WHERE r.id = :id").toString();
-        return delete(query, ImmutableMap.of("id", id));
+        return delete(entityQueries(dto).deleteById, ImmutableMap.of("id", id));
+    }
+
+    /**
+     * Delete entities by ids, see {@link #findByIds(long[], Class)}
+     *
+     * @param <E>
+     * @param ids
+     * @param dto
+     * @return
+     */
+    public final <E extends Object> int deleteByIds(long[] ids, Class<E> dto) {
+        return deleteByIds(LongIds.of(ids), dto);
     }
 
     public final <E extends Object> int deleteByIds(Collection<Long> ids, Class<E> dto) {
+        EntityTable table = idTableEntity(ids, dto);
+        if (table != null) {
+            String query = "DELETE FROM " + table.getTable() + " WHERE " + table.getIdColumns()[0]
+                    + " IN (SELECT id FROM " + hibernateProvider.getIdTable().getName() + ")";
+            int rows = executeWithIdTable(Operation.EXECUTE_UPDATE, query, ids, session -> {
+                return createNativeQuery(session, query, null, null)
+                        .addSynchronizedEntityClass(dto)
+                        .executeUpdate();
+            });
+            onUpdate(dto);
+            return rows;
+        }
         return QuerySpliterator.of(dto)
+                .withProvider(findProvider())
                 .splitBy("ids", ids, getMaxCollectionSize())
-                .setQuery(new StringBuilder()
-                        .append("DELETE FROM ").append(dto.getName()).append(" r ")
-                        .append("WHERE r.id IN :ids").toString())
+                .setQuery(entityQueries(dto).deleteByIds)
                 .executeUpdate((query, arguments) -> {
                     return delete(query, arguments);
                 });
     }
 
-    public final <E extends Object> int count(Class<E> dto) {
-        String query = new StringBuilder()
-                .append("SELECT COUNT(r.id) FROM ").append(dto.getName()).append(" r").toString();
-        return count(query, ImmutableMap.of());
+    /**
+     * @return table of dto if ids are joined through the temporary id table,
+     * null if they are queried with IN lists
+     */
+    private EntityTable idTableEntity(Collection<Long> ids, Class<?> dto) {
+        int threshold = hibernateProvider.getIdTableThreshold();
+        if (threshold <= 0 || ids.size() <= threshold || hibernateProvider.getIdTable() == null) {
+            return null;
+        }
+        EntityTable table;
+        try {
+            table = hibernateProvider.entityTable(dto);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return table.getIdColumns().length == 1 && !table.isPolymorphic() ? table : null;
     }
 
-    public final <E extends Object> int count(String query, Map<String, Object> params) {
-        return execute(session -> {
-            Number result = (Number) createQuery(session, query, params, null).uniqueResult();
-            if (result == null) {
-                return 0;
+    /**
+     * Load ids into the temporary id table, run command on the same
+     * connection then release the table. All of it runs in one transaction.
+     */
+    private <E extends Object> E executeWithIdTable(Operation operation, String query, Collection<Long> ids,
+            HibernateCommandWithReturn<E> command) {
+        IdTable idTable = hibernateProvider.getIdTable();
+        return execute(write(operation).query(query, null), session -> {
+            session.doWork(connection -> idTable.load(connection, ids, getJdbcBatchSize()));
+            try {
+                return command.apply(session);
+            } finally {
+                try {
+                    session.doWork(idTable::release);
+                } catch (Exception e) {
+                    LOGGER.warn("Release id table {} get error", idTable.getName(), e);
+                }
             }
-            return result.intValue();
         });
     }
 
+    public final <E extends Object> int count(Class<E> dto) {
+        return count(entityQueries(dto).count, ImmutableMap.of());
+    }
+
+    public final <E extends Object> int count(String query, Map<String, Object> params) {
+        return fetch(Operation.COUNT, Fetch.COUNT, query, params, null);
+    }
+
     public final <E extends Object> int countByNativeQuery(String query, Map<String, Object> params) {
-        return execute(session -> {
-            Number result = (Number) createNativeQuery(session, query, params, null).uniqueResult();
-            if (result == null) {
-                return 0;
-            }
-            return result.intValue();
-        });
+        return execute(read(Operation.COUNT).query(query, params), Fetch.NATIVE_COUNT, null);
     }
 
     public final <E extends Object> List<E> findAll(Class<E> dto) {
-        String query = new StringBuilder()
-                .append("SELECT r FROM ").append(dto.getName()).append(" r ORDER BY r.id ASC").toString();
-        return findMany(query, ImmutableMap.of(), dto);
+        return findMany(entityQueries(dto).findAll, ImmutableMap.of(), dto);
+    }
+
+    /**
+     * Iterate over all rows of dto ordered by id, page by page.
+     *
+     * @param <E>
+     * @param dto
+     * @param pageSize
+     * @return
+     */
+    public final <E extends Object> Iterator<List<E>> iterateById(Class<E> dto, int pageSize) {
+        return iterateById(dto, null, null, pageSize);
+    }
+
+    /**
+     * Iterate over rows of dto matching predicate ordered by id, page by
+     * page. Pages are fetched lazily with keyset pagination:
+     * <code>WHERE r.id &gt; :lastId ORDER BY r.id</code> limited to pageSize.
+     *
+     * @param <E>
+     * @param dto
+     * @param predicate HQL condition on alias <code>r</code>, it can be null
+     * @param arguments arguments of predicate, it can be null
+     * @param pageSize
+     * @return
+     */
+    public final <E extends Object> Iterator<List<E>> iterateById(Class<E> dto, String predicate, Map<String, Object> arguments, int pageSize) {
+        if (pageSize <= 0) {
+            throw new RuntimeException("page-size must be larger than zero");
+        }
+        String condition = Validate.isEmpty(predicate) ? null : "(" + predicate + ")";
+        String firstPage = new StringBuilder()
+                .append("SELECT r FROM ").append(dto.getName()).append(" r ")
+                .append(condition == null ? "" : "WHERE " + condition + " ")
+                .append("ORDER BY r.id ASC")
+                .toString();
+        String nextPage = new StringBuilder()
+                .append("SELECT r FROM ").append(dto.getName()).append(" r ")
+                .append("WHERE r.id > :lastId ")
+                .append(condition == null ? "" : "AND " + condition + " ")
+                .append("ORDER BY r.id ASC")
+                .toString();
+        return new KeysetIterator<>((Object lastId) -> {
+            String page = lastId == null ? firstPage : nextPage;
+            return executeRead(Operation.FIND_MANY, page, arguments, session -> {
+                Query<E> qr = createQuery(session, page, arguments, dto);
+                if (lastId != null) {
+                    qr.setParameter("lastId", lastId);
+                }
+                return qr.setMaxResults(pageSize).getResultList();
+            });
+        }, (E entity) -> {
+            return sessionFactory.getPersistenceUnitUtil().getIdentifier(entity);
+        }, pageSize);
     }
 
     public final <E extends Object> E findSingle(String query, Map<String, Object> arguments, Class<E> dto) {
-        return execute(session -> {
-            List<E> records = createQuery(session, query, arguments, dto).getResultList();
-            if (Validate.isNullOrEmpty(records)) {
-                return null;
-            }
-            return records.get(0);
-        });
+        return findSingle(Operation.FIND_SINGLE, query, arguments, dto);
+    }
+
+    private <E extends Object> E findSingle(Operation operation, String query, Map<String, Object> arguments, Class<E> dto) {
+        return fetch(operation, Fetch.FIRST, query, arguments, dto);
     }
 
     public final <E extends Object> E findSingleByNativeQuery(String query, Map<String, Object> arguments, Class<E> dto) {
-        return execute(session -> {
-            List<E> records = createNativeQuery(session, query, arguments, dto).getResultList();
-            if (Validate.isNullOrEmpty(records)) {
-                return null;
-            }
-            return records.get(0);
-        });
+        return execute(read(Operation.FIND_SINGLE).query(query, arguments), Fetch.NATIVE_FIRST, dto);
     }
 
     public final <E extends Object> E findFirst(String query, Map<String, Object> arguments, Class<E> dto) {
-        return execute(session -> {
-            List<E> result = createQuery(session, query, arguments, dto).getResultList();
-            return result != null && !result.isEmpty() ? result.get(0) : null;
-        });
+        return fetch(Operation.FIND_SINGLE, Fetch.FIRST, query, arguments, dto);
     }
 
     public final <E extends Object> E findFirstByNativeQuery(String query, Map<String, Object> arguments, Class<E> dto) {
-        return execute(session -> {
-            List<E> result = createNativeQuery(session, query, arguments, dto).getResultList();
-            return result != null && !result.isEmpty() ? result.get(0) : null;
-        });
+        return execute(read(Operation.FIND_SINGLE).query(query, arguments), Fetch.NATIVE_FIRST, dto);
     }
 
     public final <E extends Object> List<E> findMany(String query, Map<String, Object> arguments, Class<E> dto) {
-        return execute(session -> {
-            return createQuery(session, query, arguments, dto).getResultList();
-        });
+        return findMany(Operation.FIND_MANY, query, arguments, dto);
+    }
+
+    private <E extends Object> List<E> findMany(Operation operation, String query, Map<String, Object> arguments, Class<E> dto) {
+        return fetch(operation, Fetch.LIST, query, arguments, dto);
     }
 
     public final <E extends Object> List<E> findManyByNativeQuery(String query, Map<String, Object> arguments, Class<E> dto) {
-        return execute(session -> {
-            return createNativeQuery(session, query, arguments, dto).getResultList();
+        return execute(read(Operation.FIND_MANY).query(query, arguments), Fetch.NATIVE_LIST, dto);
+    }
+
+    /**
+     * Find rows of a projection query, e.g.
+     * <code>SELECT r.id, r.code FROM Item r</code>, mapped to the constructor
+     * of target whose parameters accept the selected columns. The constructor
+     * is resolved once per (query, target). Rows are mapped as they are read
+     * and never hydrated as managed entities.
+     *
+     * @param <E>
+     * @param query
+     * @param arguments
+     * @param target
+     * @return
+     */
+    public final <E extends Object> List<E> project(String query, Map<String, Object> arguments, Class<E> target) {
+        return project(false, query, arguments, target, hibernateProvider.projection(query, target));
+    }
+
+    public final <E extends Object> List<E> projectByNativeQuery(String query, Map<String, Object> arguments, Class<E> target) {
+        return project(true, query, arguments, target, hibernateProvider.projection(query, target));
+    }
+
+    /**
+     * Find rows of a projection query mapped by mapper. Results of a mapper
+     * are not served by the query result cache.
+     *
+     * @param <E>
+     * @param query
+     * @param arguments
+     * @param mapper
+     * @return
+     */
+    public final <E extends Object> List<E> project(String query, Map<String, Object> arguments, RowMapper<E> mapper) {
+        return project(false, query, arguments, null, Projection.of(mapper));
+    }
+
+    public final <E extends Object> List<E> projectByNativeQuery(String query, Map<String, Object> arguments, RowMapper<E> mapper) {
+        return project(true, query, arguments, null, Projection.of(mapper));
+    }
+
+    private <E extends Object> List<E> project(boolean nativeQuery, String query, Map<String, Object> arguments,
+            Class<E> target, Projection<E> projection) {
+        HibernateCommandWithReturn<List<E>> command = session -> {
+            Query<?> qr = nativeQuery
+                    ? createNativeQuery(session, query, arguments, null)
+                    : createQuery(session, query, arguments, null);
+            qr.setReadOnly(true);
+            /**
+             * ResultTransformer is deprecated in Hibernate 5 without a
+             * replacement, TupleTransformer comes with Hibernate 6
+             */
+            @SuppressWarnings("deprecation")
+            Query<?> transformed = qr.setResultTransformer(projection);
+            return (List<E>) transformed.getResultList();
+        };
+        QueryOptions _options = options.get();
+        boolean useCache = _options.cached;
+        _options.cached = false;
+        QueryResultCache cache = useCache && target != null && !isInTransaction()
+                ? hibernateProvider.getQueryCache() : null;
+        if (cache == null) {
+            return execute(read(Operation.FIND_MANY).query(query, arguments), command);
+        }
+        try {
+            return cache.get(query, arguments, target, _options.limit,
+                    () -> execute(primary(Operation.FIND_MANY).query(query, arguments), command));
+        } finally {
+            _options.limit = -1;
+        }
+    }
+
+    public final <E extends Object> Stream<E> findStream(String query, Map<String, Object> arguments, Class<E> dto) {
+        return findStream(query, arguments, dto, getStreamFetchSize());
+    }
+
+    public final <E extends Object> Stream<E> findStream(String query, Map<String, Object> arguments, Class<E> dto, int fetchSize) {
+        return stream(query, arguments, session -> {
+            return createQuery(session, query, arguments, dto);
+        }, fetchSize);
+    }
+
+    public final <E extends Object> Stream<E> findStreamByNativeQuery(String query, Map<String, Object> arguments, Class<E> dto) {
+        return findStreamByNativeQuery(query, arguments, dto, getStreamFetchSize());
+    }
+
+    public final <E extends Object> Stream<E> findStreamByNativeQuery(String query, Map<String, Object> arguments, Class<E> dto, int fetchSize) {
+        return stream(query, arguments, session -> {
+            return createNativeQuery(session, query, arguments, dto);
+        }, fetchSize);
+    }
+
+    public final <E extends Object> void forEach(String query, Map<String, Object> arguments, Class<E> dto, Consumer<? super E> action) {
+        try (Stream<E> stream = findStream(query, arguments, dto)) {
+            stream.forEachOrdered(action);
+        }
+    }
+
+    public final <E extends Object> void forEachByNativeQuery(String query, Map<String, Object> arguments, Class<E> dto, Consumer<? super E> action) {
+        try (Stream<E> stream = findStreamByNativeQuery(query, arguments, dto)) {
+            stream.forEachOrdered(action);
+        }
+    }
+
+    public final <E extends Object> CompletableFuture<E> findByIdAsync(long id, Class<E> dto) {
+        return async(() -> findById(id, dto));
+    }
+
+    public final <E extends Object> CompletableFuture<List<E>> findByIdsAsync(Collection<Long> ids, Class<E> dto) {
+        return async(() -> findByIds(ids, dto));
+    }
+
+    public final <E extends Object> CompletableFuture<E> findSingleAsync(String query, Map<String, Object> arguments, Class<E> dto) {
+        return async(() -> findSingle(query, arguments, dto));
+    }
+
+    public final <E extends Object> CompletableFuture<E> findFirstAsync(String query, Map<String, Object> arguments, Class<E> dto) {
+        return async(() -> findFirst(query, arguments, dto));
+    }
+
+    public final <E extends Object> CompletableFuture<List<E>> findManyAsync(String query, Map<String, Object> arguments, Class<E> dto) {
+        return async(() -> findMany(query, arguments, dto));
+    }
+
+    public final <E extends Object> CompletableFuture<List<E>> findManyByNativeQueryAsync(String query, Map<String, Object> arguments, Class<E> dto) {
+        return async(() -> findManyByNativeQuery(query, arguments, dto));
+    }
+
+    public final <E extends Object> CompletableFuture<Integer> countAsync(Class<E> dto) {
+        return async(() -> count(dto));
+    }
+
+    public final CompletableFuture<Integer> countAsync(String query, Map<String, Object> params) {
+        return async(() -> count(query, params));
+    }
+
+    public final CompletableFuture<Void> savesAsync(Collection objects) {
+        return async(() -> {
+            saves(objects);
+            return null;
         });
     }
 
-    public final <E extends Object> int update(String query, Map<String, Object> arguments) {
-        return execute(session -> {
-            return createQuery(session, query, arguments, null).executeUpdate();
+    public final CompletableFuture<Void> saveOrUpdatesAsync(Collection objects) {
+        return async(() -> {
+            saveOrUpdates(objects);
+            return null;
         });
     }
 
-    public final <E extends Object> int updateByNativeQuery(String query, Map<String, Object> arguments) {
-        return execute(session -> {
-            return createNativeQuery(session, query, arguments, null).executeUpdate();
+    public final CompletableFuture<Void> updatesAsync(Collection objects) {
+        return async(() -> {
+            updates(objects);
+            return null;
         });
     }
 
+    public final CompletableFuture<Void> deletesAsync(Collection objects) {
+        return async(() -> {
+            deletes(objects);
+            return null;
+        });
+    }
+
+    public final CompletableFuture<Integer> updateAsync(String query, Map<String, Object> arguments) {
+        return async(() -> update(query, arguments));
+    }
+
+    public final <E extends Object> int update(String query, Map<String, Object> arguments) {
+        int rs = fetch(Operation.EXECUTE_UPDATE, Fetch.UPDATE, query, arguments, null);
+        onUpdate(query);
+        return rs;
+    }
+
+    public final <E extends Object> int updateByNativeQuery(String query, Map<String, Object> arguments) {
+        int rs = fetch(Operation.EXECUTE_UPDATE, Fetch.NATIVE_UPDATE, query, arguments, null);
+        onUpdateAll();
+        return rs;
+    }
+
     public final <E extends Object> int delete(String query, Map<String, Object> arguments) {
         return update(query, arguments);
     }
@@ -0,0 +1,14 @@
+package com.openwes.repository.hibernate;
+
+import org.hibernate.StatelessSession;
+
+/**
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public interface HibernateStatelessCommand {
+
+    public void apply(StatelessSession session);
+
+}
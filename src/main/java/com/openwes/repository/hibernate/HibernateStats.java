@@ -0,0 +1,148 @@
+package com.openwes.repository.hibernate;
+
+import org.hibernate.stat.Statistics;
+
+/**
+ * Snapshot of Hibernate session factory statistics of a data source. All
+ * counters are zero unless statistics are enabled by
+ * metrics.hibernate-statistics or hibernate.generate_statistics.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class HibernateStats {
+
+    private final boolean enabled;
+    private final long sessionOpenCount;
+    private final long sessionCloseCount;
+    private final long transactionCount;
+    private final long successfulTransactionCount;
+    private final long optimisticFailureCount;
+    private final long flushCount;
+    private final long connectCount;
+    private final long prepareStatementCount;
+    private final long closeStatementCount;
+    private final long entityLoadCount;
+    private final long entityFetchCount;
+    private final long entityInsertCount;
+    private final long entityUpdateCount;
+    private final long entityDeleteCount;
+    private final long collectionLoadCount;
+    private final long queryExecutionCount;
+    private final long queryExecutionMaxTimeMs;
+    private final String queryExecutionMaxTimeQuery;
+
+    HibernateStats(Statistics statistics) {
+        this.enabled = statistics.isStatisticsEnabled();
+        this.sessionOpenCount = statistics.getSessionOpenCount();
+        this.sessionCloseCount = statistics.getSessionCloseCount();
+        this.transactionCount = statistics.getTransactionCount();
+        this.successfulTransactionCount = statistics.getSuccessfulTransactionCount();
+        this.optimisticFailureCount = statistics.getOptimisticFailureCount();
+        this.flushCount = statistics.getFlushCount();
+        this.connectCount = statistics.getConnectCount();
+        this.prepareStatementCount = statistics.getPrepareStatementCount();
+        this.closeStatementCount = statistics.getCloseStatementCount();
+        this.entityLoadCount = statistics.getEntityLoadCount();
+        this.entityFetchCount = statistics.getEntityFetchCount();
+        this.entityInsertCount = statistics.getEntityInsertCount();
+        this.entityUpdateCount = statistics.getEntityUpdateCount();
+        this.entityDeleteCount = statistics.getEntityDeleteCount();
+        this.collectionLoadCount = statistics.getCollectionLoadCount();
+        this.queryExecutionCount = statistics.getQueryExecutionCount();
+        this.queryExecutionMaxTimeMs = statistics.getQueryExecutionMaxTime();
+        this.queryExecutionMaxTimeQuery = statistics.getQueryExecutionMaxTimeQueryString();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSessionOpenCount() {
+        return sessionOpenCount;
+    }
+
+    public long getSessionCloseCount() {
+        return sessionCloseCount;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public long getSuccessfulTransactionCount() {
+        return successfulTransactionCount;
+    }
+
+    public long getOptimisticFailureCount() {
+        return optimisticFailureCount;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    public long getConnectCount() {
+        return connectCount;
+    }
+
+    public long getPrepareStatementCount() {
+        return prepareStatementCount;
+    }
+
+    public long getCloseStatementCount() {
+        return closeStatementCount;
+    }
+
+    public long getEntityLoadCount() {
+        return entityLoadCount;
+    }
+
+    public long getEntityFetchCount() {
+        return entityFetchCount;
+    }
+
+    public long getEntityInsertCount() {
+        return entityInsertCount;
+    }
+
+    public long getEntityUpdateCount() {
+        return entityUpdateCount;
+    }
+
+    public long getEntityDeleteCount() {
+        return entityDeleteCount;
+    }
+
+    public long getCollectionLoadCount() {
+        return collectionLoadCount;
+    }
+
+    public long getQueryExecutionCount() {
+        return queryExecutionCount;
+    }
+
+    public long getQueryExecutionMaxTimeMs() {
+        return queryExecutionMaxTimeMs;
+    }
+
+    public String getQueryExecutionMaxTimeQuery() {
+        return queryExecutionMaxTimeQuery;
+    }
+
+    @Override
+    public String toString() {
+        return "HibernateStats{" + "enabled=" + enabled + ", sessionOpenCount=" + sessionOpenCount
+                + ", sessionCloseCount=" + sessionCloseCount + ", transactionCount=" + transactionCount
+                + ", successfulTransactionCount=" + successfulTransactionCount
+                + ", optimisticFailureCount=" + optimisticFailureCount + ", flushCount=" + flushCount
+                + ", connectCount=" + connectCount + ", prepareStatementCount=" + prepareStatementCount
+                + ", closeStatementCount=" + closeStatementCount + ", entityLoadCount=" + entityLoadCount
+                + ", entityFetchCount=" + entityFetchCount + ", entityInsertCount=" + entityInsertCount
+                + ", entityUpdateCount=" + entityUpdateCount + ", entityDeleteCount=" + entityDeleteCount
+                + ", collectionLoadCount=" + collectionLoadCount + ", queryExecutionCount=" + queryExecutionCount
+                + ", queryExecutionMaxTimeMs=" + queryExecutionMaxTimeMs
+                + ", queryExecutionMaxTimeQuery=" + queryExecutionMaxTimeQuery + '}';
+    }
+
+}
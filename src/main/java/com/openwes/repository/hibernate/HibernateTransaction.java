@@ -2,6 +2,9 @@ package com.openwes.repository.hibernate;
 
 import com.openwes.core.utils.UniqId;
 import com.openwes.repository.RepositoryTransaction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.hibernate.Session;
 
 /**
@@ -12,8 +15,9 @@ import org.hibernate.Session;
 class HibernateTransaction implements RepositoryTransaction {
 
     private final Session session;
-    private final String txId = UniqId.uniqId16Bytes();
+    private String txId;
     private final boolean autoCommit;
+    private List<Runnable> afterCommit;
 
     public HibernateTransaction(Session session, boolean autoCommit) {
         this.session = session;
@@ -24,7 +28,14 @@ class HibernateTransaction implements RepositoryTransaction {
         return session;
     }
 
+    /**
+     * @return id of transaction, it is generated on first call because most
+     * transactions are never logged
+     */
     public String getTxId() {
+        if (txId == null) {
+            txId = UniqId.uniqId16Bytes();
+        }
         return txId;
     }
 
@@ -32,4 +43,26 @@ class HibernateTransaction implements RepositoryTransaction {
         return autoCommit;
     }
 
+    /**
+     * Register an action, e.g. cache invalidation of a write, which runs
+     * after this transaction is committed
+     *
+     * @param action
+     */
+    void afterCommit(Runnable action) {
+        if (afterCommit == null) {
+            afterCommit = new ArrayList<>();
+        }
+        afterCommit.add(action);
+    }
+
+    /**
+     * @return registered actions, they are removed from this transaction
+     */
+    List<Runnable> drainAfterCommit() {
+        List<Runnable> actions = afterCommit;
+        afterCommit = null;
+        return actions == null ? Collections.emptyList() : actions;
+    }
+
 }
@@ -0,0 +1,101 @@
+package com.openwes.repository.hibernate;
+
+import com.openwes.repository.LongIds;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Iterator;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.hql.spi.id.AbstractMultiTableBulkIdStrategyImpl;
+import org.hibernate.hql.spi.id.IdTableSupport;
+import org.hibernate.hql.spi.id.MultiTableBulkIdStrategy;
+import org.hibernate.hql.spi.id.local.LocalTemporaryTableBulkIdStrategy;
+
+/**
+ * Connection scoped temporary table of ids which large id collections are
+ * loaded into, so they can be joined by one query instead of many IN lists.
+ * The DDL is taken from the local temporary table strategy of the dialect,
+ * dialects without local temporary tables are not supported.
+ *
+ * The table is created on first use in a transaction. Tables which are
+ * created with "if not exists" are emptied after use, the others are
+ * dropped.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class IdTable {
+
+    private final String name;
+    private final String create;
+    private final String release;
+    private final String insert;
+
+    private IdTable(IdTableSupport support, Dialect dialect) {
+        this.name = support.generateIdTableName("repository_ids");
+        String options = support.getCreateIdTableStatementOptions();
+        this.create = support.getCreateIdTableCommand() + " " + name
+                + " (id " + dialect.getTypeName(Types.BIGINT) + " not null)"
+                + (options == null ? "" : " " + options);
+        this.release = support.getCreateIdTableCommand().toLowerCase().contains("if not exists")
+                ? "delete from " + name
+                : support.getDropIdTableCommand() + " " + name;
+        this.insert = "insert into " + name + " (id) values (?)";
+    }
+
+    /**
+     * @param dialect
+     * @return id table of dialect or null if dialect has no local temporary
+     * tables
+     */
+    static IdTable of(Dialect dialect) {
+        MultiTableBulkIdStrategy strategy = dialect.getDefaultMultiTableBulkIdStrategy();
+        if (!(strategy instanceof LocalTemporaryTableBulkIdStrategy)) {
+            return null;
+        }
+        return new IdTable(((AbstractMultiTableBulkIdStrategyImpl) strategy).getIdTableSupport(), dialect);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Create table and insert ids in JDBC batches of batchSize
+     *
+     * @param connection
+     * @param ids
+     * @param batchSize
+     * @throws SQLException
+     */
+    void load(Connection connection, Collection<Long> ids, int batchSize) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(create);
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insert)) {
+            int batched = 0;
+            LongIds longIds = ids instanceof LongIds ? (LongIds) ids : null;
+            Iterator<Long> iterator = longIds == null ? ids.iterator() : null;
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setLong(1, longIds != null ? longIds.getLong(i) : iterator.next());
+                statement.addBatch();
+                if (++batched >= batchSize) {
+                    statement.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    void release(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(release);
+        }
+    }
+}
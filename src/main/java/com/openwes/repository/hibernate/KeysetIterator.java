@@ -0,0 +1,70 @@
+package com.openwes.repository.hibernate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Lazy iterator over pages of a keyset (seek) query. Every page is loaded by
+ * the id of the last row of the previous page so the cost of a page does not
+ * depend on how deep it is in the table.
+ *
+ * @author xuanloc0511@gmail.com
+ * @param <E>
+ *
+ */
+class KeysetIterator<E> implements Iterator<List<E>> {
+
+    private final Function<Object, List<E>> pageLoader;
+    private final Function<E, Object> idExtractor;
+    private final int pageSize;
+    private Object lastId;
+    private List<E> nextPage;
+    private boolean exhausted = false;
+
+    /**
+     *
+     * @param pageLoader load page after given id, null for the first page
+     * @param idExtractor
+     * @param pageSize
+     */
+    public KeysetIterator(Function<Object, List<E>> pageLoader, Function<E, Object> idExtractor, int pageSize) {
+        this.pageLoader = pageLoader;
+        this.idExtractor = idExtractor;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage != null) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        List<E> page = pageLoader.apply(lastId);
+        if (page == null || page.isEmpty()) {
+            exhausted = true;
+            return false;
+        }
+        /**
+         * short page means there is no more rows, skip the last empty query
+         */
+        exhausted = page.size() < pageSize;
+        lastId = idExtractor.apply(page.get(page.size() - 1));
+        nextPage = page;
+        return true;
+    }
+
+    @Override
+    public List<E> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<E> page = nextPage;
+        nextPage = null;
+        return page;
+    }
+
+}
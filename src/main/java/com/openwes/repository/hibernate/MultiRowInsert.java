@@ -0,0 +1,23 @@
+package com.openwes.repository.hibernate;
+
+/**
+ * Multi-row <code>INSERT INTO table (...) VALUES (...), (...), ...</code> of
+ * entities of one table.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class MultiRowInsert extends MultiRowStatement {
+
+    private final String prefix;
+
+    MultiRowInsert(EntityTable table) {
+        super(table);
+        this.prefix = "INSERT INTO " + table.getTable() + " (" + String.join(", ", table.getColumns()) + ") VALUES ";
+    }
+
+    @Override
+    String sql(int rows) {
+        return prefix + values(rows);
+    }
+}
@@ -0,0 +1,126 @@
+package com.openwes.repository.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * Native statement which writes many rows of an entity table with one
+ * <code>VALUES (...), (...), ...</code> list. Rows are packed into
+ * statements of up to rows-per-statement rows which stay under the parameter
+ * limit of the JDBC driver, statements of the same size are sent in JDBC
+ * batches.
+ *
+ * Polymorphic entities are rejected because their discriminator is not
+ * written, versioned entities because their version is neither initialized
+ * nor checked.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+abstract class MultiRowStatement {
+
+    final EntityTable table;
+
+    MultiRowStatement(EntityTable table) {
+        if (table.isPolymorphic()) {
+            throw new RuntimeException("Bulk statements do not support entity " + table.getEntityName()
+                    + " which is a subclass or has subclasses");
+        }
+        if (table.isVersioned()) {
+            throw new RuntimeException("Bulk statements do not support versioned entity " + table.getEntityName());
+        }
+        this.table = table;
+    }
+
+    /**
+     * @param rows
+     * @return SQL of a statement which writes rows
+     */
+    abstract String sql(int rows);
+
+    /**
+     * @param maxParameters
+     * @return number of rows of one statement which stays under
+     * maxParameters bind parameters
+     */
+    final int maxRows(int maxParameters) {
+        return Math.max(1, maxParameters / table.getColumns().size());
+    }
+
+    /**
+     * @param rows
+     * @return <code>(?, ?), (?, ?)</code> list of rows
+     */
+    final String values(int rows) {
+        int columns = table.getColumns().size();
+        StringBuilder row = new StringBuilder(columns * 3 + 2).append('(');
+        for (int i = 0; i < columns; i++) {
+            row.append(i == 0 ? "?" : ", ?");
+        }
+        row.append(')');
+        StringBuilder values = new StringBuilder(rows * (row.length() + 2));
+        for (int i = 0; i < rows; i++) {
+            values.append(i == 0 ? "" : ", ").append(row);
+        }
+        return values.toString();
+    }
+
+    /**
+     * Write entities. Identifiers which are not assigned are generated by
+     * session before any statement runs.
+     *
+     * @param session session which generates identifiers and binds values
+     * @param connection connection which runs statements
+     * @param entities
+     * @param rowsPerStatement
+     * @param maxParameters
+     * @param batchSize number of statements of a JDBC batch
+     * @return number of statements executed
+     * @throws SQLException
+     */
+    final int execute(SharedSessionContractImplementor session, Connection connection, List<?> entities,
+            int rowsPerStatement, int maxParameters, int batchSize) throws SQLException {
+        for (Object entity : entities) {
+            table.assignId(entity, session);
+        }
+        int rows = Math.max(1, Math.min(rowsPerStatement, maxRows(maxParameters)));
+        int full = entities.size() / rows;
+        int rest = entities.size() - full * rows;
+        if (full > 0) {
+            try (PreparedStatement statement = connection.prepareStatement(sql(rows))) {
+                int batched = 0;
+                for (int i = 0; i < full; i++) {
+                    int index = 1;
+                    for (Object entity : entities.subList(i * rows, (i + 1) * rows)) {
+                        index = table.bind(statement, index, entity, session);
+                    }
+                    if (full == 1) {
+                        statement.executeUpdate();
+                        break;
+                    }
+                    statement.addBatch();
+                    if (++batched >= batchSize) {
+                        statement.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    statement.executeBatch();
+                }
+            }
+        }
+        if (rest > 0) {
+            try (PreparedStatement statement = connection.prepareStatement(sql(rest))) {
+                int index = 1;
+                for (Object entity : entities.subList(full * rows, entities.size())) {
+                    index = table.bind(statement, index, entity, session);
+                }
+                statement.executeUpdate();
+            }
+        }
+        return full + (rest > 0 ? 1 : 0);
+    }
+}
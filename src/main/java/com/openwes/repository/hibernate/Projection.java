@@ -0,0 +1,193 @@
+package com.openwes.repository.hibernate;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hibernate.transform.ResultTransformer;
+
+/**
+ * Result transformer which maps every row of a projection query with a
+ * {@link RowMapper} as it is read, rows are never materialized as entities.
+ *
+ * A constructor projection maps a row to the only constructor of the target
+ * class whose number of parameters is the number of columns. If the target
+ * class declares several constructors with that number of parameters the
+ * projection is rejected, use a {@link RowMapper} instead. The constructor is
+ * resolved once, projections are cached by the provider per (query, target
+ * class). Numbers are converted to the numeric type of a parameter because
+ * drivers return different types for the same column, e.g. BigInteger or
+ * Long for COUNT.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class Projection<E> implements ResultTransformer {
+
+    private final RowMapper<E> mapper;
+
+    private Projection(RowMapper<E> mapper) {
+        this.mapper = mapper;
+    }
+
+    static <E> Projection<E> of(RowMapper<E> mapper) {
+        return new Projection<>(mapper);
+    }
+
+    static <E> Projection<E> constructor(Class<E> target) {
+        return new Projection<>(new ConstructorMapper<>(target));
+    }
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        return mapper.map(tuple);
+    }
+
+    @Override
+    public List transformList(List collection) {
+        return collection;
+    }
+
+    private final static class ConstructorMapper<E> implements RowMapper<E> {
+
+        private final Class<E> target;
+        /**
+         * Declared constructors by number of parameters, null if there are
+         * several constructors with the same number of parameters
+         */
+        private final Map<Integer, Constructor<?>> candidates = new HashMap<>();
+        private volatile Constructor<E> constructor;
+        private volatile Class<?>[] types;
+
+        private ConstructorMapper(Class<E> target) {
+            this.target = target;
+            for (Constructor<?> candidate : target.getDeclaredConstructors()) {
+                int arity = candidate.getParameterCount();
+                candidates.put(arity, candidates.containsKey(arity) ? null : candidate);
+            }
+        }
+
+        @Override
+        public E map(Object[] row) {
+            Constructor<E> _constructor = constructor;
+            if (_constructor == null) {
+                _constructor = resolve(row);
+            }
+            Class<?>[] _types = types;
+            Object[] args = row;
+            for (int i = 0; i < _types.length; i++) {
+                Object value = convert(_types[i], row[i]);
+                if (value != row[i]) {
+                    if (args == row) {
+                        args = row.clone();
+                    }
+                    args[i] = value;
+                }
+            }
+            try {
+                return _constructor.newInstance(args);
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException(e.getCause());
+            } catch (InstantiationException | IllegalAccessException | IllegalArgumentException e) {
+                throw new RuntimeException("Can not map row to " + target.getName(), e);
+            }
+        }
+
+        private Constructor<E> resolve(Object[] row) {
+            if (!candidates.containsKey(row.length)) {
+                throw new RuntimeException("No constructor of " + target.getName() + " has " + row.length + " parameters");
+            }
+            Constructor<?> candidate = candidates.get(row.length);
+            if (candidate == null) {
+                throw new RuntimeException("Constructors of " + target.getName() + " with " + row.length
+                        + " parameters are ambiguous, use a RowMapper");
+            }
+            Class<?>[] parameterTypes = candidate.getParameterTypes();
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (!accepts(parameterTypes[i], row[i])) {
+                    throw new RuntimeException("Constructor " + candidate + " does not accept row of "
+                            + Arrays.toString(Arrays.stream(row).map(v -> v == null ? null : v.getClass().getSimpleName()).toArray()));
+                }
+            }
+            candidate.setAccessible(true);
+            types = Arrays.stream(parameterTypes).map(Projection::wrap).toArray(Class<?>[]::new);
+            constructor = (Constructor<E>) candidate;
+            return constructor;
+        }
+    }
+
+    private static boolean accepts(Class<?> type, Object value) {
+        if (value == null) {
+            return !type.isPrimitive();
+        }
+        Class<?> wrapped = wrap(type);
+        return wrapped.isInstance(value) || (value instanceof Number && Number.class.isAssignableFrom(wrapped));
+    }
+
+    private static Object convert(Class<?> type, Object value) {
+        if (value == null || type.isInstance(value) || !(value instanceof Number)) {
+            return value;
+        }
+        Number number = (Number) value;
+        if (type == Long.class) {
+            return number.longValue();
+        }
+        if (type == Integer.class) {
+            return number.intValue();
+        }
+        if (type == Double.class) {
+            return number.doubleValue();
+        }
+        if (type == Float.class) {
+            return number.floatValue();
+        }
+        if (type == Short.class) {
+            return number.shortValue();
+        }
+        if (type == Byte.class) {
+            return number.byteValue();
+        }
+        if (type == BigDecimal.class) {
+            return number instanceof BigInteger ? new BigDecimal((BigInteger) number) : new BigDecimal(number.toString());
+        }
+        if (type == BigInteger.class) {
+            return number instanceof BigDecimal ? ((BigDecimal) number).toBigInteger() : BigInteger.valueOf(number.longValue());
+        }
+        return value;
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == long.class) {
+            return Long.class;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        }
+        if (type == double.class) {
+            return Double.class;
+        }
+        if (type == float.class) {
+            return Float.class;
+        }
+        if (type == short.class) {
+            return Short.class;
+        }
+        if (type == byte.class) {
+            return Byte.class;
+        }
+        if (type == boolean.class) {
+            return Boolean.class;
+        }
+        if (type == char.class) {
+            return Character.class;
+        }
+        return Void.class;
+    }
+}
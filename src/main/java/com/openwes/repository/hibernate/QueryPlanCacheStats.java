@@ -0,0 +1,89 @@
+package com.openwes.repository.hibernate;
+
+/**
+ * Snapshot of the Hibernate query plan cache of a data source. Hit and miss
+ * counts are only collected when Hibernate statistics are enabled.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class QueryPlanCacheStats {
+
+    private final int maxSize;
+    private final int parameterMetadataMaxSize;
+    private final boolean statisticsEnabled;
+    private final long hitCount;
+    private final long missCount;
+    private final int registeredEntities;
+    private final boolean inClausePadding;
+    private final int distinctQueryCount;
+
+    QueryPlanCacheStats(int maxSize, int parameterMetadataMaxSize, boolean statisticsEnabled,
+            long hitCount, long missCount, int registeredEntities, boolean inClausePadding, int distinctQueryCount) {
+        this.maxSize = maxSize;
+        this.parameterMetadataMaxSize = parameterMetadataMaxSize;
+        this.statisticsEnabled = statisticsEnabled;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.registeredEntities = registeredEntities;
+        this.inClausePadding = inClausePadding;
+        this.distinctQueryCount = distinctQueryCount;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getParameterMetadataMaxSize() {
+        return parameterMetadataMaxSize;
+    }
+
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of queries which were parsed because their plan was not
+     * in the cache
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRatio() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return number of entities which have named id queries
+     */
+    public int getRegisteredEntities() {
+        return registeredEntities;
+    }
+
+    public boolean isInClausePadding() {
+        return inClausePadding;
+    }
+
+    /**
+     * @return number of distinct query strings which were executed, every
+     * IN-list size which is not padded counts as another query
+     */
+    public int getDistinctQueryCount() {
+        return distinctQueryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryPlanCacheStats{" + "maxSize=" + maxSize + ", parameterMetadataMaxSize=" + parameterMetadataMaxSize
+                + ", statisticsEnabled=" + statisticsEnabled + ", hitCount=" + hitCount
+                + ", missCount=" + missCount + ", registeredEntities=" + registeredEntities
+                + ", inClausePadding=" + inClausePadding + ", distinctQueryCount=" + distinctQueryCount + '}';
+    }
+
+}
@@ -0,0 +1,326 @@
+package com.openwes.repository.hibernate;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.query.spi.QueryPlanCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Size bounded LRU cache of query results keyed by (query, parameters, dto,
+ * limit) with expiration after write.
+ *
+ * Every entry is tagged with the query spaces (tables) of its query as
+ * Hibernate parses it, including tables reached through association paths
+ * and joins. A write on an entity class increases the generation of the
+ * tables of that class and all entries tagged with one of them become
+ * stale. Queries which Hibernate can not parse as HQL, e.g. native queries,
+ * become stale on any write.
+ *
+ * Cached lists are unmodifiable and cached entities are shared by all
+ * callers, they must not be modified.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class QueryResultCache {
+
+    private final static AtomicLong[] NO_TAGS = new AtomicLong[0];
+    private final static Serializable[] NOT_HQL = new Serializable[0];
+
+    private final Cache<Key, Entry> cache;
+    private final SessionFactoryImplementor sessionFactory;
+    /**
+     * Query spaces of a query, NOT_HQL if it is not HQL. It is bounded like
+     * the result cache.
+     */
+    private final Cache<String, Serializable[]> querySpaces;
+    private final Map<Serializable, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final AtomicLong writeGeneration = new AtomicLong(0);
+    private final AtomicLong globalGeneration = new AtomicLong(0);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    QueryResultCache(SessionFactory sessionFactory, long maxSize, long expireAfterWriteMs) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWriteMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.querySpaces = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+        this.sessionFactory = (SessionFactoryImplementor) sessionFactory;
+    }
+
+    /**
+     * Return cached result of query or load and cache it.
+     *
+     * @param <T>
+     * @param query
+     * @param params
+     * @param dto
+     * @param limit
+     * @param loader
+     * @return
+     */
+    public <T> T get(String query, Map<String, Object> params, Class<?> dto, int limit, Supplier<T> loader) {
+        Key key = new Key(query, params, dto, limit);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            if (isValid(entry)) {
+                hits.increment();
+                return (T) entry.value;
+            }
+            staleHits.increment();
+        }
+        misses.increment();
+        /**
+         * Take generations before loading so a write which commits while
+         * loading makes the loaded value stale.
+         */
+        AtomicLong[] tags = tags(query, dto);
+        long[] stamps = new long[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            stamps[i] = tags[i].get();
+        }
+        long globalStamp = globalGeneration.get();
+        T value = loader.get();
+        if (value instanceof List) {
+            value = (T) Collections.unmodifiableList(new ArrayList<>((List) value));
+        }
+        cache.put(key, new Entry(value, tags, stamps, globalStamp));
+        return value;
+    }
+
+    private boolean isValid(Entry entry) {
+        if (entry.globalStamp != globalGeneration.get()) {
+            return false;
+        }
+        for (int i = 0; i < entry.tags.length; i++) {
+            if (entry.tags[i].get() != entry.stamps[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return generations of the query spaces of query and dto, the write
+     * generation if query is not HQL
+     */
+    private AtomicLong[] tags(String query, Class<?> dto) {
+        Serializable[] spaces = querySpaces.getIfPresent(query);
+        if (spaces == null) {
+            spaces = parse(query);
+            querySpaces.put(query, spaces);
+        }
+        if (spaces == NOT_HQL) {
+            return new AtomicLong[]{writeGeneration};
+        }
+        Set<Serializable> _spaces = new LinkedHashSet<>();
+        Collections.addAll(_spaces, spaces);
+        EntityPersister persister = persister(dto);
+        if (persister != null) {
+            Collections.addAll(_spaces, persister.getQuerySpaces());
+        }
+        if (_spaces.isEmpty()) {
+            return NO_TAGS;
+        }
+        AtomicLong[] tags = new AtomicLong[_spaces.size()];
+        int i = 0;
+        for (Serializable space : _spaces) {
+            tags[i++] = generation(space);
+        }
+        return tags;
+    }
+
+    /**
+     * @return query spaces of an HQL query, NOT_HQL if Hibernate can not
+     * parse it as HQL
+     */
+    private Serializable[] parse(String query) {
+        /**
+         * The query plan cache is deprecated in Hibernate 5 without a
+         * replacement, it moves to the query engine in Hibernate 6
+         */
+        @SuppressWarnings("deprecation")
+        QueryPlanCache plans = sessionFactory.getQueryPlanCache();
+        try {
+            Set<Serializable> spaces = plans.getHQLQueryPlan(query, false, Collections.emptyMap())
+                    .getQuerySpaces();
+            return spaces.toArray(new Serializable[spaces.size()]);
+        } catch (RuntimeException e) {
+            return NOT_HQL;
+        }
+    }
+
+    private EntityPersister persister(Class<?> entityClass) {
+        if (entityClass == null) {
+            return null;
+        }
+        try {
+            return sessionFactory.getMetamodel().entityPersister(entityClass);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private AtomicLong generation(Serializable space) {
+        return generations.computeIfAbsent(space, s -> new AtomicLong(0));
+    }
+
+    private void invalidate(Serializable[] spaces) {
+        invalidations.increment();
+        for (Serializable space : spaces) {
+            generation(space).incrementAndGet();
+        }
+        writeGeneration.incrementAndGet();
+    }
+
+    /**
+     * Make all entries which refer to a table of entity class stale
+     *
+     * @param entityClass
+     */
+    public void invalidate(Class<?> entityClass) {
+        EntityPersister persister = persister(entityClass);
+        if (persister == null) {
+            invalidateAll();
+            return;
+        }
+        invalidate(persister.getQuerySpaces());
+    }
+
+    /**
+     * Make all entries which refer to a table written by an HQL update or
+     * delete stale. If the query can not be parsed, all entries become stale.
+     *
+     * @param query
+     */
+    public void invalidate(String query) {
+        Serializable[] spaces = parse(query);
+        if (spaces == NOT_HQL) {
+            invalidateAll();
+            return;
+        }
+        invalidate(spaces);
+    }
+
+    public void invalidateAll() {
+        invalidations.increment();
+        globalGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of lookups which found an entry invalidated by a write
+     */
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    public double getHitRate() {
+        long _hits = hits.sum();
+        long total = _hits + misses.sum();
+        return total == 0 ? 1.0 : (double) _hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache{" + "size=" + getSize() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", staleHits=" + getStaleHitCount()
+                + ", invalidations=" + getInvalidationCount() + ", evictions=" + getEvictionCount() + '}';
+    }
+
+    private final static class Key {
+
+        private final String query;
+        private final Map<String, Object> params;
+        private final Class<?> dto;
+        private final int limit;
+        private final int hash;
+
+        Key(String query, Map<String, Object> params, Class<?> dto, int limit) {
+            this.query = query;
+            this.params = params == null || params.isEmpty()
+                    ? Collections.emptyMap() : new HashMap<>(params);
+            this.dto = dto;
+            this.limit = limit;
+            this.hash = Objects.hash(query, this.params, dto, limit);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && limit == other.limit
+                    && dto == other.dto
+                    && query.equals(other.query)
+                    && params.equals(other.params);
+        }
+    }
+
+    private final static class Entry {
+
+        private final Object value;
+        private final AtomicLong[] tags;
+        private final long[] stamps;
+        private final long globalStamp;
+
+        Entry(Object value, AtomicLong[] tags, long[] stamps, long globalStamp) {
+            this.value = value;
+            this.tags = tags;
+            this.stamps = stamps;
+            this.globalStamp = globalStamp;
+        }
+    }
+}
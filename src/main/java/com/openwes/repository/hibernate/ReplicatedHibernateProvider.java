@@ -0,0 +1,130 @@
+package com.openwes.repository.hibernate;
+
+import com.openwes.core.utils.Utils;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValueFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hibernate provider with read replicas. The provider itself is the primary,
+ * writes and every call inside a transaction go to the primary. Finder
+ * methods called outside of a transaction go to a replica chosen by
+ * <code>replica-routing</code> (round-robin or least-busy).
+ *
+ * <pre>
+ * DEFAULT {
+ *   provider = "com.openwes.repository.hibernate.ReplicatedHibernateProvider"
+ *   replica-routing = least-busy
+ *   configure { ... primary ... }
+ *   replicas {
+ *     R1.configure.hibernate.connection.url = "jdbc:mysql://replica-1/wes"
+ *     R2.configure.hibernate.connection.url = "jdbc:mysql://replica-2/wes"
+ *   }
+ * }
+ * </pre>
+ *
+ * Replica configuration falls back to the primary configuration. Schema
+ * management (hibernate.hbm2ddl.auto), second level cache, query cache and
+ * entity cache and write-behind buffers are always disabled on replicas.
+ * Results read from a replica can lag behind the primary.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class ReplicatedHibernateProvider extends HibernateProvider {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ReplicatedHibernateProvider.class);
+
+    enum Routing {
+        ROUND_ROBIN,
+        LEAST_BUSY
+    }
+
+    private final List<HibernateProvider> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger(0);
+    private Routing routing = Routing.ROUND_ROBIN;
+
+    @Override
+    public void onStart(Config config) throws Exception {
+        super.onStart(config);
+        if (config.hasPath("replica-routing")) {
+            routing = Routing.valueOf(config.getString("replica-routing")
+                    .trim()
+                    .toUpperCase()
+                    .replace('-', '_'));
+        }
+        if (!config.hasPath("replicas")) {
+            LOGGER.warn("Data-source {} does not have any replica, all queries go to primary", getDataSourceName());
+            return;
+        }
+        Config primaryConfig = config.withoutPath("replicas");
+        Config replicasConfig = config.getConfig("replicas");
+        Set<String> replicaNames = Utils.getSetOfKey(replicasConfig, 1);
+        for (String replicaName : replicaNames) {
+            /**
+             * Caches of a replica would never be evicted by writes on the
+             * primary, cached finders are served by caches of the primary.
+             * Writes are never routed to replicas so they have no write-behind
+             * buffers
+             */
+            Config replicaConfig = replicasConfig.getConfig(replicaName)
+                    .withFallback(primaryConfig)
+                    .withoutPath("second-level-cache")
+                    .withoutPath("query-cache")
+                    .withoutPath("entity-cache")
+                    .withoutPath("write-behind")
+                    .withValue("configure.hibernate.hbm2ddl.auto", ConfigValueFactory.fromAnyRef("none"))
+                    .withValue("configure.hibernate.cache.use_second_level_cache", ConfigValueFactory.fromAnyRef("false"))
+                    .withValue("configure.hibernate.cache.use_query_cache", ConfigValueFactory.fromAnyRef("false"));
+            LOGGER.info("Starting replica {} of data-source {}...", replicaName, getDataSourceName());
+            HibernateProvider replica = new HibernateProvider();
+            replica.onStart(replicaConfig);
+            replicas.add(replica);
+            LOGGER.info("Started replica {} of data-source {}.", replicaName, getDataSourceName());
+        }
+    }
+
+    @Override
+    public void onStop(Config config) throws Exception {
+        for (HibernateProvider replica : replicas) {
+            try {
+                replica.onStop(config);
+            } catch (Exception ex) {
+                LOGGER.error("Shutdown replica of data-source {} get exception", getDataSourceName(), ex);
+            }
+        }
+        super.onStop(config);
+    }
+
+    @Override
+    public HibernateProvider readProvider() {
+        if (replicas.isEmpty() || currentTransaction() != null) {
+            return this;
+        }
+        if (routing == Routing.LEAST_BUSY) {
+            HibernateProvider leastBusy = replicas.get(0);
+            int sessions = leastBusy.getActiveSessions();
+            for (int i = 1; i < replicas.size(); i++) {
+                HibernateProvider replica = replicas.get(i);
+                int _sessions = replica.getActiveSessions();
+                if (_sessions < sessions) {
+                    leastBusy = replica;
+                    sessions = _sessions;
+                }
+            }
+            return leastBusy;
+        }
+        return replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    }
+
+    public List<HibernateProvider> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+}
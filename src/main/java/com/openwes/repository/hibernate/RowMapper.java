@@ -0,0 +1,19 @@
+package com.openwes.repository.hibernate;
+
+/**
+ * Map a row of a projection query to a result object
+ *
+ * @author xuanloc0511@gmail.com
+ * @param <E>
+ *
+ */
+@FunctionalInterface
+public interface RowMapper<E> {
+
+    /**
+     * @param row values of the selected columns in select order
+     * @return
+     */
+    public E map(Object[] row);
+
+}
@@ -0,0 +1,54 @@
+package com.openwes.repository.hibernate;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * Forward-only spliterator on top of {@link ScrollableResults}. When
+ * clearSize is larger than zero, the session will be cleared after every
+ * clearSize rows so the persistence context does not grow with the size of
+ * the result.
+ *
+ * @author xuanloc0511@gmail.com
+ * @param <E>
+ *
+ */
+class ScrollableResultsSpliterator<E> extends Spliterators.AbstractSpliterator<E> {
+
+    private final Session session;
+    private final ScrollableResults results;
+    private final int clearSize;
+    private long rows = 0;
+
+    public ScrollableResultsSpliterator(Session session, ScrollableResults results, int clearSize) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.session = session;
+        this.results = results;
+        this.clearSize = clearSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if (!results.next()) {
+            return false;
+        }
+        Object[] row = results.get();
+        action.accept((E) (row.length == 1 ? row[0] : row));
+        rows++;
+        if (clearSize > 0 && rows % clearSize == 0) {
+            session.clear();
+        }
+        return true;
+    }
+
+    /**
+     * @return number of rows which have been consumed
+     */
+    long rows() {
+        return rows;
+    }
+
+}
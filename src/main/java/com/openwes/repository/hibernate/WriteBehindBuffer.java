@@ -0,0 +1,394 @@
+package com.openwes.repository.hibernate;
+
+import com.openwes.repository.Operation;
+import com.openwes.repository.RepositoryMetrics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.persistence.PersistenceUnitUtil;
+import org.hibernate.Session;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind buffer of an entity class. Writes of many threads are queued
+ * and flushed by one flusher thread as a single transaction when max batch
+ * size writes are pending or the oldest pending write is max delay old.
+ *
+ * Updates of the same id in a batch are coalesced, the last one wins. The
+ * future of a write completes when the transaction of its batch is
+ * committed. If the transaction of a batch fails, the batch is split in
+ * halves which are written again in their own transactions, until the
+ * writes which fail alone are found: only their futures complete
+ * exceptionally.
+ *
+ * The queue is bounded by capacity. A write which can not be queued within
+ * offer timeout is rejected with an exception so callers slow down. Writes
+ * which are still queued when the flusher is interrupted or does not stop in
+ * time complete exceptionally.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class WriteBehindBuffer {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    enum Mode {
+        SAVE, UPDATE, SAVE_OR_UPDATE, DELETE
+    }
+
+    private final static class Entry {
+
+        private Mode mode;
+        private Object entity;
+        private final Object id;
+        private final long enqueued = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private List<CompletableFuture<Void>> coalesced;
+
+        private Entry(Mode mode, Object entity, Object id) {
+            this.mode = mode;
+            this.entity = entity;
+            this.id = id;
+        }
+
+        private void coalesce(Entry next) {
+            mode = mode == Mode.UPDATE && next.mode == Mode.UPDATE ? Mode.UPDATE : Mode.SAVE_OR_UPDATE;
+            entity = next.entity;
+            if (coalesced == null) {
+                coalesced = new ArrayList<>();
+            }
+            coalesced.add(next.future);
+            if (next.coalesced != null) {
+                coalesced.addAll(next.coalesced);
+            }
+        }
+
+        /**
+         * @return number of writes of this entry, including coalesced ones
+         */
+        private int writes() {
+            return coalesced == null ? 1 : 1 + coalesced.size();
+        }
+
+        private void complete(Throwable error) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+            if (coalesced != null) {
+                coalesced.forEach(f -> {
+                    if (error == null) {
+                        f.complete(null);
+                    } else {
+                        f.completeExceptionally(error);
+                    }
+                });
+            }
+        }
+    }
+
+    private final HibernateProvider provider;
+    private final Class<?> entityClass;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final long offerTimeoutMs;
+    private final BlockingQueue<Entry> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder rejectedWrites = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    WriteBehindBuffer(HibernateProvider provider, Class<?> entityClass, int maxBatchSize, long maxDelayMs,
+            int capacity, long offerTimeoutMs) {
+        this.provider = provider;
+        this.entityClass = entityClass;
+        this.persistenceUnitUtil = provider.getSessionFactory().getPersistenceUnitUtil();
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flusher = new Thread(this::run, "write-behind-" + provider.getDataSourceName() + "-" + entityClass.getSimpleName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a write of entity
+     *
+     * @param mode
+     * @param entity
+     * @return future which completes when the write is committed
+     */
+    CompletableFuture<Void> write(Mode mode, Object entity) {
+        if (!running) {
+            throw new RuntimeException("Write-behind buffer of " + entityClass.getName() + " is stopped");
+        }
+        Entry entry = new Entry(mode, entity, persistenceUnitUtil.getIdentifier(entity));
+        try {
+            if (!queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejectedWrites.increment();
+                throw new RuntimeException("Write-behind buffer of " + entityClass.getName() + " is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (!running && !flusher.isAlive() && queue.remove(entry)) {
+            /**
+             * Queued after the flusher has exited, it would never be flushed
+             */
+            throw new RuntimeException("Write-behind buffer of " + entityClass.getName() + " is stopped");
+        }
+        return entry.future;
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.enqueued + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || wait <= 0 || !running) {
+                        break;
+                    }
+                    Entry next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                queue.drainTo(batch);
+                LOGGER.warn("Write-behind flusher of {} is interrupted with {} pending writes", entityClass.getName(), batch.size());
+                fail(batch, new RuntimeException("Write-behind flusher of " + entityClass.getName() + " is interrupted"));
+                return;
+            } catch (Throwable e) {
+                LOGGER.error("Write-behind flusher of {} get error", entityClass.getName(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private List<Entry> coalesce(List<Entry> batch) {
+        List<Entry> result = new ArrayList<>(batch.size());
+        Map<Object, Entry> updates = new HashMap<>();
+        for (Entry entry : batch) {
+            if (entry.id != null && (entry.mode == Mode.UPDATE || entry.mode == Mode.SAVE_OR_UPDATE)) {
+                Entry previous = updates.get(entry.id);
+                if (previous != null) {
+                    previous.coalesce(entry);
+                    coalescedWrites.increment();
+                    continue;
+                }
+                updates.put(entry.id, entry);
+            } else if (entry.id != null) {
+                /**
+                 * Saves and deletes are never coalesced, updates which come
+                 * after them are applied after them
+                 */
+                updates.remove(entry.id);
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    private void flush(List<Entry> batch) {
+        List<Entry> entries = coalesce(batch);
+        RepositoryMetrics metrics = provider.getMetrics();
+        long start = metrics.start(Operation.WRITE_BEHIND);
+        int failed = 0;
+        try {
+            failed = write(entries);
+        } finally {
+            metrics.stop(Operation.WRITE_BEHIND, start, batch.size(), failed > 0);
+        }
+        batches.increment();
+        writes.add(batch.size());
+    }
+
+    /**
+     * Write entries in one transaction. If it fails, each half is written
+     * again in its own transaction.
+     *
+     * @return number of writes which failed
+     */
+    private int write(List<Entry> entries) {
+        Throwable error = commit(entries);
+        if (error == null) {
+            invalidate(entries);
+            entries.forEach(entry -> entry.complete(null));
+            return 0;
+        }
+        if (entries.size() == 1) {
+            Entry entry = entries.get(0);
+            LOGGER.error("Write-behind {} of {} with id {} get error", entry.mode, entityClass.getName(), entry.id, error);
+            failedWrites.add(entry.writes());
+            entry.complete(error);
+            return entry.writes();
+        }
+        LOGGER.warn("Write-behind batch of {} writes of {} get error, retry it in halves: {}",
+                entries.size(), entityClass.getName(), error.toString());
+        int half = entries.size() / 2;
+        return write(entries.subList(0, half)) + write(entries.subList(half, entries.size()));
+    }
+
+    /**
+     * @return error of the transaction or null if it is committed
+     */
+    private Throwable commit(List<Entry> entries) {
+        Session session = provider.getSessionFactory().openSession();
+        try {
+            session.beginTransaction();
+            int jdbcBatchSize = provider.getBatchSize();
+            Set<Object> written = new HashSet<>();
+            int pending = 0;
+            for (Entry entry : entries) {
+                if (pending >= jdbcBatchSize || (entry.id != null && !written.add(entry.id))) {
+                    /**
+                     * The same id can not be associated twice to a session
+                     */
+                    session.flush();
+                    session.clear();
+                    written.clear();
+                    if (entry.id != null) {
+                        written.add(entry.id);
+                    }
+                    pending = 0;
+                }
+                switch (entry.mode) {
+                    case SAVE:
+                        session.save(entry.entity);
+                        break;
+                    case UPDATE:
+                        session.update(entry.entity);
+                        break;
+                    case SAVE_OR_UPDATE:
+                        session.saveOrUpdate(entry.entity);
+                        break;
+                    default:
+                        session.delete(entry.entity);
+                }
+                pending++;
+            }
+            session.flush();
+            session.getTransaction().commit();
+            return null;
+        } catch (Throwable e) {
+            if (session.getTransaction().getStatus() == TransactionStatus.ACTIVE
+                    || session.getTransaction().getStatus() == TransactionStatus.MARKED_ROLLBACK) {
+                try {
+                    session.getTransaction().rollback();
+                } catch (Exception ex) {
+                    LOGGER.error("Rollback write-behind batch get error", ex);
+                }
+            }
+            return e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private void fail(List<Entry> entries, Throwable error) {
+        failedWrites.add(entries.size());
+        entries.forEach(entry -> entry.complete(error));
+    }
+
+    private void invalidate(List<Entry> entries) {
+        QueryResultCache queryCache = provider.getQueryCache();
+        if (queryCache != null) {
+            queryCache.invalidate(entityClass);
+        }
+        EntityCache entityCache = provider.getEntityCache();
+        if (entityCache != null) {
+            entries.forEach(entry -> entityCache.evict(entityClass, entry.entity));
+        }
+    }
+
+    /**
+     * Stop accepting writes, flush pending writes and wait for the flusher.
+     * Writes which are still queued after timeout complete exceptionally, the
+     * batch which is being flushed completes as usual.
+     *
+     * @param timeoutMs
+     * @throws InterruptedException
+     */
+    void stop(long timeoutMs) throws InterruptedException {
+        running = false;
+        flusher.join(timeoutMs);
+        if (flusher.isAlive()) {
+            List<Entry> pending = new ArrayList<>(queue.size());
+            queue.drainTo(pending);
+            LOGGER.warn("Write-behind buffer of {} is stopped with {} pending writes", entityClass.getName(), pending.size());
+            fail(pending, new RuntimeException("Write-behind buffer of " + entityClass.getName() + " is stopped before pending writes are flushed"));
+        }
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return number of writes waiting in the queue
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of writes flushed, including coalesced and failed writes
+     */
+    public long getWriteCount() {
+        return writes.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedWrites.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejectedWrites.sum();
+    }
+
+    public long getFailedCount() {
+        return failedWrites.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindBuffer{" + "entityClass=" + entityClass.getName() + ", pending=" + getPendingCount()
+                + ", writes=" + getWriteCount() + ", coalesced=" + getCoalescedCount() + ", batches=" + getBatchCount()
+                + ", rejected=" + getRejectedCount() + ", failed=" + getFailedCount() + '}';
+    }
+}
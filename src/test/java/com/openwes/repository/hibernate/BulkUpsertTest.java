@@ -0,0 +1,141 @@
+package com.openwes.repository.hibernate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQL57Dialect;
+import org.hibernate.dialect.PostgreSQL10Dialect;
+import org.hibernate.dialect.PostgreSQL82Dialect;
+import org.hibernate.dialect.PostgreSQL94Dialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * SQL of bulk upsert per dialect and an upsert round trip on H2
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class BulkUpsertTest {
+
+    private static TestItemRepository repository;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        TestItemRepository.start();
+        repository = new TestItemRepository();
+    }
+
+    @Before
+    public void prepare() {
+        repository.deleteByNativeQuery("DELETE FROM test_item", Collections.emptyMap());
+    }
+
+    @Test
+    public void h2Merge() {
+        assertEquals("MERGE INTO test_item t USING (SELECT * FROM (VALUES (?, ?, ?, ?), (?, ?, ?, ?))"
+                + " v (id, code, location, quantity)) s ON (t.id = s.id)"
+                + " WHEN MATCHED THEN UPDATE SET code = s.code, location = s.location, quantity = s.quantity"
+                + " WHEN NOT MATCHED THEN INSERT (id, code, location, quantity) VALUES (s.id, s.code, s.location, s.quantity)",
+                upsert(new H2Dialect()).sql(2));
+        assertEquals("MERGE INTO test_item t USING (SELECT * FROM (VALUES (?, ?, ?, ?))"
+                + " v (id, code, location, quantity)) s ON (t.code = s.code)"
+                + " WHEN MATCHED THEN UPDATE SET location = s.location, quantity = s.quantity"
+                + " WHEN NOT MATCHED THEN INSERT (id, code, location, quantity) VALUES (s.id, s.code, s.location, s.quantity)",
+                upsert(new H2Dialect(), "code").sql(1));
+    }
+
+    @Test
+    public void postgreSqlOnConflict() {
+        String expected = "INSERT INTO test_item (id, code, location, quantity) VALUES (?, ?, ?, ?), (?, ?, ?, ?)"
+                + " ON CONFLICT (id) DO UPDATE SET code = EXCLUDED.code, location = EXCLUDED.location, quantity = EXCLUDED.quantity";
+        assertEquals(expected, upsert(new PostgreSQL95Dialect()).sql(2));
+        assertEquals(expected, upsert(new PostgreSQL10Dialect()).sql(2));
+        assertEquals("INSERT INTO test_item (id, code, location, quantity) VALUES (?, ?, ?, ?)"
+                + " ON CONFLICT (code) DO UPDATE SET location = EXCLUDED.location, quantity = EXCLUDED.quantity",
+                upsert(new PostgreSQL95Dialect(), "code").sql(1));
+    }
+
+    @Test
+    public void mySqlOnDuplicateKey() {
+        assertEquals("INSERT INTO test_item (id, code, location, quantity) VALUES (?, ?, ?, ?), (?, ?, ?, ?)"
+                + " ON DUPLICATE KEY UPDATE code = VALUES(code), location = VALUES(location), quantity = VALUES(quantity)",
+                upsert(new MySQL57Dialect()).sql(2));
+    }
+
+    @Test
+    public void rejectsPostgreSqlBefore95() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> upsert(new PostgreSQL94Dialect()));
+        assertTrue(e.getMessage(), e.getMessage().contains("9.5"));
+        assertThrows(RuntimeException.class, () -> upsert(new PostgreSQL82Dialect()));
+    }
+
+    @Test
+    public void rejectsVersionedEntity() {
+        EntityTable table = repository.provider().entityTable(VersionedItem.class);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> new BulkUpsert(table, new H2Dialect()));
+        assertTrue(e.getMessage(), e.getMessage().contains("versioned"));
+        assertThrows(RuntimeException.class, () -> new MultiRowInsert(table));
+    }
+
+    @Test
+    public void rejectsDatabaseIdWithoutConflictKeys() {
+        EntityTable table = repository.provider().entityTable(IdentityItem.class);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> new BulkUpsert(table, new H2Dialect()));
+        assertTrue(e.getMessage(), e.getMessage().contains("generated by the database"));
+        assertEquals("MERGE INTO identity_item t USING (SELECT * FROM (VALUES (?, ?))"
+                + " v (code, quantity)) s ON (t.code = s.code)"
+                + " WHEN MATCHED THEN UPDATE SET quantity = s.quantity"
+                + " WHEN NOT MATCHED THEN INSERT (code, quantity) VALUES (s.code, s.quantity)",
+                new BulkUpsert(table, new H2Dialect(), "code").sql(1));
+    }
+
+    @Test
+    public void upsertById() {
+        repository.bulkUpsert(Arrays.asList(
+                new TestItem(1, "ITEM-1", 10),
+                new TestItem(2, "ITEM-2", 20)));
+        assertEquals(Arrays.asList(10, 20), quantities(1L, 2L));
+
+        repository.bulkUpsert(Arrays.asList(
+                new TestItem(2, "ITEM-2", 21),
+                new TestItem(3, "ITEM-3", 30)));
+        assertEquals(3, repository.count(TestItem.class));
+        assertEquals(Arrays.asList(10, 21, 30), quantities(1L, 2L, 3L));
+    }
+
+    @Test
+    public void upsertByConflictKey() {
+        repository.bulkUpsert(Arrays.asList(
+                new TestItem(1, "ITEM-1", 10),
+                new TestItem(2, "ITEM-2", 20)));
+
+        /**
+         * Rows are matched by code, ids of existing rows are kept
+         */
+        repository.bulkUpsert(Arrays.asList(
+                new TestItem(101, "ITEM-1", 11),
+                new TestItem(103, "ITEM-3", 30)), "code");
+        assertEquals(3, repository.count(TestItem.class));
+        assertEquals(Arrays.asList(11, 20, 30), quantities(1L, 2L, 103L));
+        assertTrue(repository.findByIds(Arrays.asList(101L), TestItem.class).isEmpty());
+    }
+
+    private static BulkUpsert upsert(Dialect dialect, String... conflictKeys) {
+        return new BulkUpsert(repository.provider().entityTable(TestItem.class), dialect, conflictKeys);
+    }
+
+    private static List<Integer> quantities(Long... ids) {
+        return repository.findByIds(Arrays.asList(ids), TestItem.class).stream()
+                .map(TestItem::getQuantity)
+                .collect(Collectors.toList());
+    }
+}
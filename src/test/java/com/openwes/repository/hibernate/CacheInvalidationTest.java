@@ -0,0 +1,88 @@
+package com.openwes.repository.hibernate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.hibernate.Session;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Writes which bypass the Session invalidate the entity cache, the query
+ * result cache and the second level cache once their rows are committed
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class CacheInvalidationTest {
+
+    private static TestItemRepository repository;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        TestItemRepository.start();
+        repository = new TestItemRepository();
+        assertNotNull(repository.provider().getEntityCache());
+        assertTrue(repository.provider().isSecondLevelCacheEnabled());
+    }
+
+    @Before
+    public void prepare() {
+        repository.deleteByNativeQuery("DELETE FROM test_item", Collections.emptyMap());
+    }
+
+    @Test
+    public void bulkUpdateEvictsSecondLevelCache() {
+        repository.save(new TestItem(1, "ITEM-1", 10));
+        assertEquals(10, load(1).getQuantity());
+        assertEquals(10, repository.findById(1, TestItem.class).getQuantity());
+
+        repository.bulkUpdate(Arrays.asList(new TestItem(1, "ITEM-1", 11)));
+        assertEquals(11, load(1).getQuantity());
+        assertEquals(11, repository.findById(1, TestItem.class).getQuantity());
+    }
+
+    @Test
+    public void upsertByConflictKeyEvictsWholeClass() {
+        repository.bulkUpsert(Arrays.asList(new TestItem(1, "ITEM-1", 10)));
+        assertEquals(10, repository.findById(1, TestItem.class).getQuantity());
+        assertEquals(10, load(1).getQuantity());
+
+        /**
+         * The row keeps id 1, the object has id 101
+         */
+        repository.bulkUpsert(Arrays.asList(new TestItem(101, "ITEM-1", 11)), "code");
+        assertEquals(11, repository.findById(1, TestItem.class).getQuantity());
+        assertEquals(11, load(1).getQuantity());
+    }
+
+    @Test
+    public void multiRowInsertInvalidatesAtOnceInTransaction() {
+        assertEquals(0, repository.cached().count(TestItem.class));
+        repository.provider().beginTransaction();
+        try {
+            repository.multiRowInsert(Arrays.asList(new TestItem(1, "ITEM-1", 10)));
+        } finally {
+            /**
+             * The insert is committed on its own connection
+             */
+            repository.provider().rollbackTransaction();
+            repository.provider().endTransaction();
+        }
+        assertEquals(1, repository.cached().count(TestItem.class));
+        assertEquals(10, load(1).getQuantity());
+    }
+
+    /**
+     * @return entity loaded by id by a new session, through the second level
+     * cache
+     */
+    private static TestItem load(long id) {
+        try (Session session = repository.provider().getSessionFactory().openSession()) {
+            return session.get(TestItem.class, id);
+        }
+    }
+}
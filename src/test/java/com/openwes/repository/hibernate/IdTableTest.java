@@ -0,0 +1,117 @@
+package com.openwes.repository.hibernate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * findByIds and deleteByIds above id-table.threshold, through the temporary
+ * id table, must return the same as below it, through IN lists.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class IdTableTest {
+
+    private final static int ROWS = 20;
+
+    private static TestItemRepository inList;
+    private static TestItemRepository idTable;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        TestItemRepository.start();
+        inList = new TestItemRepository();
+        idTable = new TestItemRepository.IdTableRepository();
+    }
+
+    @Before
+    public void prepare() {
+        for (TestItemRepository repository : Arrays.asList(inList, idTable)) {
+            repository.deleteByNativeQuery("DELETE FROM test_item", Collections.emptyMap());
+            List<TestItem> items = new ArrayList<>();
+            for (long id = 1; id <= ROWS; id++) {
+                items.add(new TestItem(id, "ITEM-" + id, (int) id));
+            }
+            repository.saves(items);
+        }
+    }
+
+    @Test
+    public void idTableIsUsedAboveThreshold() {
+        assertNotNull(idTable.provider().getIdTable());
+        assertEquals(2, idTable.provider().getIdTableThreshold());
+        assertEquals(0, inList.provider().getIdTableThreshold());
+    }
+
+    @Test
+    public void findByIds() {
+        List<Long> ids = Arrays.asList(17L, 3L, 9L, 1L, 12L, 20L, 5L, 8L, 14L, 2L);
+        assertFound(Arrays.asList(1L, 2L, 3L, 5L, 8L, 9L, 12L, 14L, 17L, 20L), ids);
+    }
+
+    @Test
+    public void findByIdsWithDuplicateIds() {
+        List<Long> ids = Arrays.asList(4L, 4L, 4L, 4L, 4L, 7L, 2L, 7L, 4L, 11L, 2L);
+        assertFound(Arrays.asList(2L, 4L, 7L, 11L), ids);
+        assertFound(Arrays.asList(2L, 4L, 7L, 11L), ids.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    @Test
+    public void findByIdsWithMissingIds() {
+        List<Long> ids = Arrays.asList(100L, 6L, 200L, 19L, 300L);
+        assertFound(Arrays.asList(6L, 19L), ids);
+    }
+
+    @Test
+    public void findByIdsWithEmptyCollection() {
+        assertFound(Collections.emptyList(), Collections.emptyList());
+        assertFound(Collections.emptyList(), new long[0]);
+    }
+
+    @Test
+    public void deleteByIds() {
+        List<Long> ids = Arrays.asList(3L, 18L, 3L, 7L, 100L, 18L, 10L, 3L);
+        for (TestItemRepository repository : Arrays.asList(inList, idTable)) {
+            assertEquals(4, repository.deleteByIds(ids, TestItem.class));
+            assertEquals(ROWS - 4, repository.count(TestItem.class));
+            assertTrue(repository.findByIds(Arrays.asList(3L, 7L, 10L, 18L), TestItem.class).isEmpty());
+        }
+        assertEquals(new TreeSet<>(idsOf(inList.findAll(TestItem.class))),
+                new TreeSet<>(idsOf(idTable.findAll(TestItem.class))));
+    }
+
+    @Test
+    public void deleteByIdsWithEmptyCollection() {
+        for (TestItemRepository repository : Arrays.asList(inList, idTable)) {
+            assertEquals(0, repository.deleteByIds(Collections.emptyList(), TestItem.class));
+            assertEquals(0, repository.deleteByIds(new long[0], TestItem.class));
+            assertEquals(ROWS, repository.count(TestItem.class));
+        }
+    }
+
+    private static void assertFound(List<Long> expected, List<Long> ids) {
+        assertEquals(expected, idsOf(inList.findByIds(ids, TestItem.class)));
+        assertEquals(expected, idsOf(idTable.findByIds(ids, TestItem.class)));
+    }
+
+    private static void assertFound(List<Long> expected, long[] ids) {
+        assertEquals(expected, idsOf(inList.findByIds(ids, TestItem.class)));
+        assertEquals(expected, idsOf(idTable.findByIds(ids, TestItem.class)));
+    }
+
+    private static List<Long> idsOf(List<TestItem> items) {
+        return items.stream()
+                .map(TestItem::getId)
+                .collect(Collectors.toList());
+    }
+}
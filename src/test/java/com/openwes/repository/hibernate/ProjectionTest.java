@@ -0,0 +1,64 @@
+package com.openwes.repository.hibernate;
+
+import java.math.BigInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * A constructor projection is resolved by the number of columns, never by the
+ * values of the first row.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class ProjectionTest {
+
+    public static class Stock {
+
+        private final String code;
+        private final long quantity;
+
+        public Stock(String code, long quantity) {
+            this.code = code;
+            this.quantity = quantity;
+        }
+
+        public Stock(String code) {
+            this(code, 0);
+        }
+    }
+
+    public static class Overloaded {
+
+        public Overloaded(String code, long quantity) {
+        }
+
+        public Overloaded(String code, String location) {
+        }
+    }
+
+    @Test
+    public void mapsByNumberOfColumns() {
+        Projection<Stock> projection = Projection.constructor(Stock.class);
+        Stock stock = (Stock) projection.transformTuple(new Object[]{"ITEM-1", BigInteger.TEN}, null);
+        assertEquals("ITEM-1", stock.code);
+        assertEquals(10, stock.quantity);
+        stock = (Stock) projection.transformTuple(new Object[]{"ITEM-2", 3}, null);
+        assertEquals(3, stock.quantity);
+    }
+
+    @Test
+    public void rejectsAmbiguousConstructors() {
+        Projection<Overloaded> projection = Projection.constructor(Overloaded.class);
+        for (Object[] row : new Object[][]{{"ITEM-1", 1L}, {"ITEM-1", "A-01"}}) {
+            try {
+                projection.transformTuple(row, null);
+                fail("Overloads with the same number of parameters must be rejected");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("ambiguous"));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.openwes.repository.hibernate;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Cached results of queries which reach an entity through an association
+ * path or a join fetch become stale when that entity is written
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class QueryResultCacheTest {
+
+    private final static String BY_ITEM_CODE = "SELECT b FROM " + TestBin.class.getName()
+            + " b WHERE b.item.code = :code";
+    private final static String FETCH_ITEM = "SELECT b FROM " + TestBin.class.getName()
+            + " b JOIN FETCH b.item WHERE b.code = :code";
+
+    private static TestItemRepository repository;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        TestItemRepository.start();
+        repository = new TestItemRepository();
+        assertNotNull(repository.provider().getQueryCache());
+    }
+
+    @Before
+    public void prepare() {
+        clean();
+        TestItem item = new TestItem(1, "ITEM-1", 10);
+        repository.save(item);
+        repository.save(new TestBin(1, "BIN-1", item));
+    }
+
+    @After
+    public void clean() {
+        repository.deleteByNativeQuery("DELETE FROM test_bin", Collections.emptyMap());
+        repository.deleteByNativeQuery("DELETE FROM test_item", Collections.emptyMap());
+    }
+
+    @Test
+    public void associationPath() {
+        assertEquals(1, byItemCode("ITEM-1").size());
+        assertEquals(1, byItemCode("ITEM-1").size());
+
+        TestItem item = repository.findById(1, TestItem.class);
+        item.setCode("ITEM-1B");
+        repository.update(item);
+
+        assertTrue(byItemCode("ITEM-1").isEmpty());
+        assertEquals(1, byItemCode("ITEM-1B").size());
+    }
+
+    @Test
+    public void joinFetch() {
+        assertEquals(10, fetchItem("BIN-1").get(0).getItem().getQuantity());
+
+        TestItem item = repository.findById(1, TestItem.class);
+        item.setQuantity(11);
+        repository.update(item);
+
+        assertEquals(11, fetchItem("BIN-1").get(0).getItem().getQuantity());
+    }
+
+    @Test
+    public void hits() {
+        QueryResultCache cache = repository.provider().getQueryCache();
+        long hits = cache.getHitCount();
+        byItemCode("ITEM-1");
+        byItemCode("ITEM-1");
+        assertEquals(hits + 1, cache.getHitCount());
+        repository.saves(Arrays.asList(new TestItem(2, "ITEM-2", 20)));
+        byItemCode("ITEM-1");
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    private static List<TestBin> byItemCode(String code) {
+        return repository.cached().findMany(BY_ITEM_CODE, ImmutableMap.of("code", code), TestBin.class);
+    }
+
+    private static List<TestBin> fetchItem(String code) {
+        return repository.cached().findMany(FETCH_ITEM, ImmutableMap.of("code", code), TestBin.class);
+    }
+}
@@ -0,0 +1,64 @@
+package com.openwes.repository.hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@Entity
+@Table(name = "test_bin")
+public class TestBin {
+
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "code", length = 64)
+    private String code;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "item_id")
+    private TestItem item;
+
+    public TestBin() {
+    }
+
+    public TestBin(long id, String code, TestItem item) {
+        this.id = id;
+        this.code = code;
+        this.item = item;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public TestItem getItem() {
+        return item;
+    }
+
+    public void setItem(TestItem item) {
+        this.item = item;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.openwes.repository.hibernate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+@Entity
+@Table(name = "test_item")
+public class TestItem {
+
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "code", length = 64, unique = true)
+    private String code;
+
+    @Column(name = "location", length = 64)
+    private String location;
+
+    @Column(name = "quantity")
+    private int quantity;
+
+    public TestItem() {
+    }
+
+    public TestItem(long id, String code, int quantity) {
+        this.id = id;
+        this.code = code;
+        this.location = "LOC-" + id;
+        this.quantity = quantity;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.openwes.repository.hibernate;
+
+import com.openwes.repository.DataSourceManager;
+import com.openwes.repository.RepositoryInitializer;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Repository of test entities on the DEFAULT data source of test.conf, which
+ * queries ids with IN lists. Data sources are started once per JVM.
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+class TestItemRepository extends HibernateRepository {
+
+    private static boolean started = false;
+
+    static synchronized void start() throws Exception {
+        if (!started) {
+            new RepositoryInitializer().onStart(ConfigFactory.parseResources("test.conf")
+                    .resolve()
+                    .getConfig("repository"));
+            started = true;
+        }
+    }
+
+    @Override
+    public String dataSource() {
+        return DataSourceManager.DEFAULT;
+    }
+
+    HibernateProvider provider() {
+        return (HibernateProvider) DataSourceManager.instance().provider(dataSource());
+    }
+
+    /**
+     * Repository on the ID_TABLE data source of test.conf, which joins more
+     * than 2 ids through the temporary id table
+     */
+    static class IdTableRepository extends TestItemRepository {
+
+        @Override
+        public String dataSource() {
+            return "ID_TABLE";
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.openwes.repository.hibernate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * A write which fails in a write-behind batch does not fail the other writes
+ * of the batch
+ *
+ * @author xuanloc0511@gmail.com
+ *
+ */
+public class WriteBehindBufferTest {
+
+    private static TestItemRepository repository;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        TestItemRepository.start();
+        repository = new TestItemRepository.IdTableRepository();
+        assertNotNull(repository.provider().getWriteBehindBuffer(TestItem.class));
+    }
+
+    @After
+    public void clean() {
+        repository.deleteByNativeQuery("DELETE FROM test_item", Collections.emptyMap());
+    }
+
+    @Test
+    public void failedWriteIsIsolated() throws Exception {
+        repository.save(new TestItem(505, "ITEM-505", 0));
+        WriteBehindBuffer buffer = repository.provider().getWriteBehindBuffer(TestItem.class);
+        long failed = buffer.getFailedCount();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long id = 501; id <= 510; id++) {
+            futures.add(repository.saveBehind(new TestItem(id, "ITEM-" + id, 1)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            long id = 501 + i;
+            try {
+                futures.get(i).get(10, TimeUnit.SECONDS);
+                if (id == 505) {
+                    fail("Save of an existing id must fail");
+                }
+            } catch (ExecutionException e) {
+                if (id != 505) {
+                    throw e;
+                }
+            }
+        }
+        assertEquals(10, repository.count(TestItem.class));
+        assertEquals(0, repository.findById(505, TestItem.class).getQuantity());
+        assertEquals(failed + 1, buffer.getFailedCount());
+    }
+}